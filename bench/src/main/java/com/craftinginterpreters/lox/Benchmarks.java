@@ -0,0 +1,19 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Entry point of benchmarks.jar. Takes the usual JMH options, but writes
+// the results as JSON to jmh-result.json unless told otherwise.
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (!options.getResultFormat().hasValue())  builder.resultFormat(ResultFormatType.JSON);
+        if (!options.getResult().hasValue())    builder.result("jmh-result.json");
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,52 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Runs each workload from the top in a fresh interpreter. The tree is
+// shared between invocations, so what the interpreter caches on it (inline
+// caches, specialized operators, compiled functions) stays warm, as it
+// would in a long-running script. Printed output is discarded.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"recursion", "dispatch", "strings", "natives", "loops"})
+    public String workload;
+
+    @Param({"true", "false"})
+    public boolean jit;
+
+    private List<Stmt> statements;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        JitCompiler.enabled = jit;
+        List<Stmt> parsed = new Parser(new Scanner(Workload.source(workload)).scanTokens()).parse();
+        new Resolver().resolve(parsed);
+        statements = new Optimizer().optimize(parsed);
+
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown()  {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public Object interpret()   {
+        Interpreter interpreter = new Interpreter();
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+}
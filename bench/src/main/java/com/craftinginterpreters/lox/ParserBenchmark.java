@@ -0,0 +1,29 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"recursion", "dispatch", "strings", "natives", "loops"})
+    public String workload;
+
+    private List<Token> tokens;
+
+    @Setup
+    public void setUp() {
+        tokens = new Scanner(Workload.source(workload)).scanTokens();
+    }
+
+    @Benchmark
+    public Object parse()   {
+        return new Parser(tokens).parse();
+    }
+}
@@ -0,0 +1,32 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Resolving only records scope locations on the tree, so the same parsed
+// statements can be resolved again on every invocation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolverBenchmark {
+    @Param({"recursion", "dispatch", "strings", "natives", "loops"})
+    public String workload;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(Workload.source(workload)).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public Object resolve() {
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({"recursion", "dispatch", "strings", "natives", "loops"})
+    public String workload;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Workload.source(workload);
+    }
+
+    @Benchmark
+    public Object scanTokens()  {
+        return new Scanner(source).scanTokens();
+    }
+}
@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// The scripts under resources/workloads that every benchmark runs over.
+final class Workload {
+    private Workload() {}
+
+    static String source(String name)   {
+        try (InputStream in = Workload.class.getResourceAsStream("/workloads/" + name + ".yazz"))  {
+            if (in == null) throw new IllegalArgumentException("No workload named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// Allocation tracking behind --alloc-profile. Each place the interpreter
+// creates one of the objects below counts it against the line the script
+// is on, which comes from the profiler's shadow stack. Sizes are shallow
+// estimates for a 64-bit JVM with compressed references, not measurements.
+// The sites are only reached when tracking is on, so leaving it off costs
+// a static field read each.
+final class Allocations {
+    enum Kind   {
+        INSTANCE("instance"),
+        ENVIRONMENT("environment"),
+        BOUND_METHOD("bound method"),
+        NUMBER("number"),
+        STRING("string"),
+        ARGUMENTS("argument list");
+
+        final String label;
+
+        Kind(String label)  {
+            this.label = label;
+        }
+    }
+
+    private static final int REPORT_ROWS = 20;
+
+    static boolean tracking = false;
+    private static Profiler lines;
+    // Counts and bytes by kind, indexed by line.
+    private static final long[][] counts = new long[Kind.values().length][64];
+    private static final long[][] bytes = new long[Kind.values().length][64];
+
+    private Allocations() {}
+
+    static void start(Profiler profiler)    {
+        lines = profiler;
+        tracking = true;
+    }
+
+    static void instance(int fieldCapacity) {
+        record(Kind.INSTANCE, 24 + array(fieldCapacity));
+    }
+
+    static void fields(int size)    {
+        record(Kind.INSTANCE, array(size));
+    }
+
+    static void environment(int slots)  {
+        record(Kind.ENVIRONMENT, 32 + array(slots));
+    }
+
+    static void slots(int size) {
+        record(Kind.ENVIRONMENT, array(size));
+    }
+
+    static void boundMethod()   {
+        record(Kind.BOUND_METHOD, 32);
+    }
+
+    static void arguments(int count)    {
+        record(Kind.ARGUMENTS, array(count));
+    }
+
+    // A value an operator or a native just produced. Booleans and nil are
+    // never allocated, and anything else is passed through unchanged.
+    static void value(Object value) {
+        if (value instanceof Double)    {
+            record(Kind.NUMBER, 16);
+        } else if (value instanceof String) {
+            record(Kind.STRING, 24 + align(16 + ((String)value).length()));
+        }
+    }
+
+    private static long array(int length)   {
+        return align(16 + 4L * length);
+    }
+
+    private static long align(long size)    {
+        return (size + 7) & ~7L;
+    }
+
+    private static void record(Kind kind, long size)    {
+        int line = lines.currentLine();
+        int k = kind.ordinal();
+        if (line >= counts[k].length)   {
+            int length = Math.max(line + 1, counts[k].length * 2);
+            counts[k] = Arrays.copyOf(counts[k], length);
+            bytes[k] = Arrays.copyOf(bytes[k], length);
+        }
+        counts[k][line]++;
+        bytes[k][line] += size;
+    }
+
+    static void report(PrintStream out) {
+        long totalCount = 0;
+        long totalBytes = 0;
+        long[] kindCounts = new long[Kind.values().length];
+        long[] kindBytes = new long[Kind.values().length];
+        List<long[]> sites = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            for (int line = 0; line < counts[k].length; line++) {
+                if (counts[k][line] == 0)   continue;
+                kindCounts[k] += counts[k][line];
+                kindBytes[k] += bytes[k][line];
+                sites.add(new long[] {bytes[k][line], counts[k][line], line, k});
+            }
+            totalCount += kindCounts[k];
+            totalBytes += kindBytes[k];
+        }
+
+        out.println();
+        out.printf("Allocations: %d objects, %s (estimated)%n", totalCount, Bench.size(totalBytes));
+
+        out.println();
+        out.println("  Kind               Count       Bytes");
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            if (kindCounts[k] == 0) continue;
+            out.printf(Locale.ROOT, "  %-14s %10d  %10s%n", kind.label, kindCounts[k], Bench.size(kindBytes[k]));
+        }
+
+        sites.sort((a, b) -> Long.compare(b[0], a[0]));
+        out.println();
+        out.println("  Line  Kind               Count       Bytes");
+        for (long[] site : sites.subList(0, Math.min(REPORT_ROWS, sites.size())))   {
+            String line = site[2] == 0 ? "?" : String.valueOf(site[2]);
+            out.printf(Locale.ROOT, "  %4s  %-14s %10d  %10s%n", line, Kind.values()[(int)site[3]].label, site[1], Bench.size(site[0]));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+// The --cache directory of compiled scripts. Each entry is the optimized,
+// resolved tree of one script in the .yazzc format, named after the
+// SHA-256 of the format version and the script's bytes, so an edited
+// script simply misses. A hit is memory-mapped and read back without
+// scanning, parsing, resolving or optimizing. The cache is only ever an
+// optimization: an entry that can't be read or written is ignored.
+class AstCache  {
+    static final String EXTENSION = ".yazzc";
+
+    private final Path directory;
+
+    AstCache(Path directory)    {
+        this.directory = directory;
+    }
+
+    static Path defaultDirectory()  {
+        return Paths.get(System.getProperty("user.home"), ".cache", "yazz");
+    }
+
+    // Returns null if the script has a compile error, as Yazz.parse does.
+    List<Stmt> load(byte[] source)  {
+        Path entry = directory.resolve(key(source) + EXTENSION);
+        List<Stmt> statements = read(entry);
+        if (statements != null) return statements;
+
+        statements = Yazz.parse(new String(source, Charset.defaultCharset()));
+        if (statements != null) write(entry, statements);
+        return statements;
+    }
+
+    private static List<Stmt> read(Path entry)  {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ))    {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return AstReader.read(buffer);
+        } catch (IOException | IllegalArgumentException | BufferUnderflowException e)  {
+            return null;
+        }
+    }
+
+    // Written under a temporary name and moved into place, so a reader
+    // never maps a half-written entry.
+    private void write(Path entry, List<Stmt> statements)  {
+        Path temporary = null;
+        try {
+            byte[] bytes = AstWriter.write(statements);
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, "yazzc", ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException e)  {
+            if (temporary != null)  {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored)   {
+                }
+            }
+        }
+    }
+
+    static String key(byte[] source)    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte)AstWriter.VERSION);
+            byte[] hash = digest.digest(source);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)    {
+            // Every JVM has to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,30 +1,118 @@
 package com.craftinginterpreters.lox;
 
-class AstPrinter implements Expr.Visitor<String>    {
+import java.util.List;
+
+class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String>    {
 
     String print(Expr expr) {
         return expr.accept(this);
     }
 
+    String print(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(block");
+        appendStatements(builder, stmt.statements);
+        builder.append(")");
+        return builder.toString();
+    }
+
+    @Override
+    public String visitClassStmt(Stmt.Class stmt) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(class ").append(stmt.name.lexeme());
+        if (stmt.superclass != null)    {
+            builder.append(" < ").append(print(stmt.superclass));
+        }
+        for (Stmt.Function method : stmt.methods)   {
+            builder.append(" ").append(print(method));
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(fun ").append(stmt.name.lexeme()).append("(");
+        for (Token param : stmt.params) {
+            if (param != stmt.params.get(0))    builder.append(" ");
+            builder.append(param.lexeme());
+        }
+        builder.append(")");
+        appendStatements(builder, stmt.body);
+        builder.append(")");
+        return builder.toString();
+    }
+
+    @Override
+    public String visitIfStmt(Stmt.If stmt) {
+        if (stmt.elseBranch == null)    {
+            return "(if " + print(stmt.condition) + " " + print(stmt.thenBranch) + ")";
+        }
+        return "(if-else " + print(stmt.condition) + " " + print(stmt.thenBranch) + " " + print(stmt.elseBranch) + ")";
+    }
+
+    @Override
+    public String visitImportStmt(Stmt.Import stmt) {
+        return "(import " + stmt.path.lexeme() + ")";
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return "(return)";
+        return parenthesize("return", stmt.value);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null)   return "(var " + stmt.name.lexeme() + ")";
+        return "(var " + stmt.name.lexeme() + " = " + print(stmt.initializer) + ")";
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        return "(while " + print(stmt.condition) + " " + print(stmt.body) + ")";
+    }
 
     @Override
     public String visitAssignExpr(Expr.Assign expr) {
-        return null;
+        return "(= " + expr.name.lexeme() + " " + print(expr.value) + ")";
     }
 
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
-        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
     public String visitCallExpr(Expr.Call expr) {
-        return null;
+        StringBuilder builder = new StringBuilder();
+        builder.append("(call ").append(print(expr.callee));
+        for (Expr argument : expr.arguments)    {
+            builder.append(" ").append(print(argument));
+        }
+        builder.append(")");
+        return builder.toString();
     }
 
     @Override
     public String visitGetExpr(Expr.Get expr) {
-        return null;
+        return "(. " + print(expr.object) + " " + expr.name.lexeme() + ")";
     }
 
     @Override
@@ -37,38 +125,47 @@ class AstPrinter implements Expr.Visitor<String>    {
         if (expr.value == null) {
             return "nil";
         }
+        if (expr.value instanceof String)   {
+            return "\"" + expr.value + "\"";
+        }
         return expr.value.toString();
     }
 
 
     @Override
     public String visitLogicalExpr(Expr.Logical expr) {
-        return null;
+        return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
     }
 
     @Override
     public String visitSetExpr(Expr.Set expr) {
-        return null;
+        return "(= (. " + print(expr.object) + " " + expr.name.lexeme() + ") " + print(expr.value) + ")";
     }
 
     @Override
     public String visitSuperExpr(Expr.Super expr) {
-        return null;
+        return "(super " + expr.method.lexeme() + ")";
     }
 
     @Override
     public String visitThisExpr(Expr.This expr) {
-        return null;
+        return "this";
     }
 
     @Override
     public String visitUnaryExpr(Expr.Unary expr)   {
-        return parenthesize(expr.operator.lexeme, expr.right);
+        return parenthesize(expr.operator.lexeme(), expr.right);
     }
 
     @Override
     public String visitVariableExpr(Expr.Variable expr) {
-        return null;
+        return expr.name.lexeme();
+    }
+
+    private void appendStatements(StringBuilder builder, List<Stmt> statements) {
+        for (Stmt statement : statements)   {
+            builder.append(" ").append(print(statement));
+        }
     }
 
     private String parenthesize(String name, Expr... exprs) {
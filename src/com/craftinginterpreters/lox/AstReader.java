@@ -0,0 +1,216 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.AstWriter.*;
+
+// Loads a tree AstWriter wrote, straight from the buffer (usually a mapped
+// file). Every string is decoded once from the table, so all tokens with
+// the same lexeme share one String. A file that doesn't parse as the
+// current format throws IllegalArgumentException.
+class AstReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ByteBuffer buffer;
+    private String[] strings;
+    private int line = 0;
+
+    private AstReader(ByteBuffer buffer)    {
+        this.buffer = buffer;
+    }
+
+    static List<Stmt> read(ByteBuffer buffer)   {
+        AstReader reader = new AstReader(buffer);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalArgumentException("Not a current .yazzc file.");
+        }
+
+        reader.strings = new String[reader.varint()];
+        for (int i = 0; i < reader.strings.length; i++) {
+            byte[] bytes = new byte[reader.varint()];
+            buffer.get(bytes);
+            reader.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<Stmt> statements = reader.statements();
+        if (buffer.hasRemaining())  throw new IllegalArgumentException("Trailing bytes.");
+        return statements;
+    }
+
+    private List<Stmt> statements() {
+        int count = varint();
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(stmt());
+        }
+        return statements;
+    }
+
+    private List<Expr> expressions()    {
+        int count = varint();
+        List<Expr> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(expr());
+        }
+        return expressions;
+    }
+
+    private Expr expr() {
+        int tag = buffer.get();
+        switch (tag)    {
+            case 0:
+                return null;
+            case ASSIGN: {
+                Expr.Assign expr = new Expr.Assign(token(), expr());
+                expr.depth = varint() - 1;
+                expr.slot = varint();
+                return expr;
+            }
+            case BINARY:
+                return new Expr.Binary(expr(), token(), expr());
+            case CALL: {
+                Expr.Call expr = new Expr.Call(expr(), token(), expressions());
+                expr.tailCall = flag();
+                return expr;
+            }
+            case GET:
+                return new Expr.Get(expr(), token());
+            case GROUPING:
+                return new Expr.Grouping(expr());
+            case LITERAL:
+                return new Expr.Literal(value());
+            case LOGICAL:
+                return new Expr.Logical(expr(), token(), expr());
+            case SET:
+                return new Expr.Set(expr(), token(), expr());
+            case SUPER: {
+                Expr.Super expr = new Expr.Super(token(), token());
+                expr.depth = varint() - 1;
+                expr.slot = varint();
+                return expr;
+            }
+            case THIS: {
+                Expr.This expr = new Expr.This(token());
+                expr.depth = varint() - 1;
+                expr.slot = varint();
+                return expr;
+            }
+            case UNARY:
+                return new Expr.Unary(token(), expr());
+            case VARIABLE:
+                return variable();
+        }
+        throw new IllegalArgumentException("Bad expression tag " + tag + ".");
+    }
+
+    private Expr.Variable variable()    {
+        Expr.Variable expr = new Expr.Variable(token());
+        expr.depth = varint() - 1;
+        expr.slot = varint();
+        return expr;
+    }
+
+    private Stmt stmt() {
+        int tag = buffer.get();
+        switch (tag)    {
+            case 0:
+                return null;
+            case BLOCK:
+                return new Stmt.Block(statements());
+            case CLASS: {
+                Token name = token();
+                Expr.Variable superclass = null;
+                int superTag = buffer.get();
+                if (superTag == VARIABLE)   {
+                    superclass = variable();
+                } else if (superTag != 0)   {
+                    throw new IllegalArgumentException("Bad superclass tag " + superTag + ".");
+                }
+                int count = varint();
+                List<Stmt.Function> methods = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    if (buffer.get() != FUNCTION)   throw new IllegalArgumentException("Bad method.");
+                    methods.add(function());
+                }
+                return new Stmt.Class(name, superclass, methods);
+            }
+            case EXPRESSION:
+                return new Stmt.Expression(expr());
+            case FUNCTION:
+                return function();
+            case IF:
+                return new Stmt.If(expr(), stmt(), stmt());
+            case IMPORT:
+                return new Stmt.Import(token(), token());
+            case PRINT:
+                return new Stmt.Print(expr());
+            case RETURN:
+                return new Stmt.Return(token(), expr());
+            case VAR:
+                return new Stmt.Var(token(), expr());
+            case WHILE:
+                return new Stmt.While(token(), expr(), stmt());
+        }
+        throw new IllegalArgumentException("Bad statement tag " + tag + ".");
+    }
+
+    private Stmt.Function function()    {
+        Token name = token();
+        int count = varint();
+        List<Token> params = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            params.add(token());
+        }
+        Stmt.Function function = new Stmt.Function(name, params, statements());
+        function.method = flag();
+        return function;
+    }
+
+    private Token token()   {
+        int type = varint();
+        if (type >= TOKEN_TYPES.length) throw new IllegalArgumentException("Bad token type " + type + ".");
+        String lexeme = string();
+        Object literal = value();
+        int delta = varint();
+        line += (delta >>> 1) ^ -(delta & 1);
+        return new Token(TOKEN_TYPES[type], lexeme, literal, line);
+    }
+
+    private Object value()  {
+        int tag = buffer.get();
+        switch (tag)    {
+            case NIL: return null;
+            case TRUE: return true;
+            case FALSE: return false;
+            case NUMBER: return Double.longBitsToDouble(buffer.getLong());
+            case STRING: return string();
+        }
+        throw new IllegalArgumentException("Bad value tag " + tag + ".");
+    }
+
+    private String string() {
+        int index = varint();
+        if (index >= strings.length)    throw new IllegalArgumentException("Bad string index " + index + ".");
+        return strings[index];
+    }
+
+    private boolean flag()  {
+        return buffer.get() != 0;
+    }
+
+    private int varint()    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)    {
+                if (value < 0)  break;
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Bad varint.");
+    }
+}
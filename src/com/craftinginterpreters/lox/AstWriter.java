@@ -0,0 +1,352 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes a resolved tree in the .yazzc format AstReader loads. The file is
+// a header, a table of every string in the tree, then the nodes in prefix
+// order: a tag byte followed by the node's fields. Tokens and literals
+// refer to strings by their index in the table. What the Resolver filled
+// in (depth, slot, tail calls and whether a function is a method) is
+// written too, so nothing has to be resolved again.
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
+    static final int MAGIC = 0x595A4343;    // "YZCC"
+    static final int VERSION = 2;
+
+    // Tag 0 stands for a missing node.
+    static final int ASSIGN = 1;
+    static final int BINARY = 2;
+    static final int CALL = 3;
+    static final int GET = 4;
+    static final int GROUPING = 5;
+    static final int LITERAL = 6;
+    static final int LOGICAL = 7;
+    static final int SET = 8;
+    static final int SUPER = 9;
+    static final int THIS = 10;
+    static final int UNARY = 11;
+    static final int VARIABLE = 12;
+
+    static final int BLOCK = 20;
+    static final int CLASS = 21;
+    static final int EXPRESSION = 22;
+    static final int FUNCTION = 23;
+    static final int IF = 24;
+    static final int PRINT = 25;
+    static final int RETURN = 26;
+    static final int VAR = 27;
+    static final int WHILE = 28;
+    static final int IMPORT = 29;
+
+    static final int NIL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int NUMBER = 3;
+    static final int STRING = 4;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private int line = 0;
+
+    static byte[] write(List<Stmt> statements)  {
+        AstWriter writer = new AstWriter();
+        writer.statements(statements);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, MAGIC);
+        writeInt(out, VERSION);
+        varint(out, writer.strings.size());
+        for (String string : writer.strings)    {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            varint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        byte[] nodes = writer.body.toByteArray();
+        out.write(nodes, 0, nodes.length);
+        return out.toByteArray();
+    }
+
+    private void statements(List<? extends Stmt> statements)    {
+        varint(body, statements.size());
+        for (Stmt statement : statements)   {
+            statement.accept(this);
+        }
+    }
+
+    private void expressions(List<Expr> expressions)    {
+        varint(body, expressions.size());
+        for (Expr expression : expressions) {
+            expression.accept(this);
+        }
+    }
+
+    private void expr(Expr expr)    {
+        if (expr == null)   {
+            body.write(0);
+            return;
+        }
+        expr.accept(this);
+    }
+
+    private void stmt(Stmt stmt)    {
+        if (stmt == null)   {
+            body.write(0);
+            return;
+        }
+        stmt.accept(this);
+    }
+
+    private void token(Token token) {
+        varint(body, token.type.ordinal());
+        string(token.lexeme());
+        value(token.literal);
+        // Lines are stored as the zigzag-encoded change from the last
+        // token's, which nearly always fits in one byte.
+        int delta = token.line - line;
+        varint(body, (delta << 1) ^ (delta >> 31));
+        line = token.line;
+    }
+
+    private void value(Object value)    {
+        if (value == null)  {
+            body.write(NIL);
+        } else if (value instanceof Boolean)    {
+            body.write((Boolean)value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            body.write(NUMBER);
+            long bits = Double.doubleToRawLongBits((Double)value);
+            writeInt(body, (int)(bits >>> 32));
+            writeInt(body, (int)bits);
+        } else if (value instanceof String) {
+            body.write(STRING);
+            string((String)value);
+        } else  {
+            throw new IllegalArgumentException("Can't write a " + value.getClass().getSimpleName() + " literal.");
+        }
+    }
+
+    private void string(String string)  {
+        Integer index = stringIndex.get(string);
+        if (index == null)  {
+            index = strings.size();
+            strings.add(string);
+            stringIndex.put(string, index);
+        }
+        varint(body, index);
+    }
+
+    // Depths are -1 for globals, so they are stored one higher.
+    private void resolved(int depth, int slot)  {
+        varint(body, depth + 1);
+        varint(body, slot);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)   {
+        body.write(ASSIGN);
+        token(expr.name);
+        expr(expr.value);
+        resolved(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)   {
+        body.write(BINARY);
+        expr(expr.left);
+        token(expr.operator);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)   {
+        body.write(CALL);
+        expr(expr.callee);
+        token(expr.paren);
+        expressions(expr.arguments);
+        body.write(expr.tailCall ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        body.write(GET);
+        expr(expr.object);
+        token(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)   {
+        body.write(GROUPING);
+        expr(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        body.write(LITERAL);
+        value(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        body.write(LOGICAL);
+        expr(expr.left);
+        token(expr.operator);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        body.write(SET);
+        expr(expr.object);
+        token(expr.name);
+        expr(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        body.write(SUPER);
+        token(expr.keyword);
+        token(expr.method);
+        resolved(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)   {
+        body.write(THIS);
+        token(expr.keyword);
+        resolved(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        body.write(UNARY);
+        token(expr.operator);
+        expr(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)   {
+        body.write(VARIABLE);
+        token(expr.name);
+        resolved(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        body.write(BLOCK);
+        statements(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        body.write(CLASS);
+        token(stmt.name);
+        expr(stmt.superclass);
+        statements(stmt.methods);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)   {
+        body.write(EXPRESSION);
+        expr(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)   {
+        body.write(FUNCTION);
+        token(stmt.name);
+        varint(body, stmt.params.size());
+        for (Token param : stmt.params) {
+            token(param);
+        }
+        statements(stmt.body);
+        body.write(stmt.method ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)   {
+        body.write(IF);
+        expr(stmt.condition);
+        stmt(stmt.thenBranch);
+        stmt(stmt.elseBranch);
+        return null;
+    }
+
+    // The module itself isn't written. It depends on where the script
+    // is, so imports are loaded again each time a tree is read.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt)   {
+        body.write(IMPORT);
+        token(stmt.keyword);
+        token(stmt.path);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        body.write(PRINT);
+        expr(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)   {
+        body.write(RETURN);
+        token(stmt.keyword);
+        expr(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        body.write(VAR);
+        token(stmt.name);
+        expr(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        body.write(WHILE);
+        token(stmt.keyword);
+        expr(stmt.condition);
+        stmt(stmt.body);
+        return null;
+    }
+
+    // Unsigned LEB128: seven bits a byte, low bits first.
+    private static void varint(ByteArrayOutputStream out, int value)    {
+        while ((value & ~0x7f) != 0)    {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value)  {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,255 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+// The "bench" command: runs a script, or one of its functions, over and
+// over in the same interpreter and reports how long each run took. Warmup
+// runs come first so the JVM and the JIT have settled before anything is
+// measured. The script's own output is thrown away while it runs.
+class Bench {
+    private final Interpreter interpreter;
+    private int warmup = 5;
+    private int iterations = 20;
+    private String function = null;
+    private String json = null;
+
+    Bench(Interpreter interpreter)  {
+        this.interpreter = interpreter;
+    }
+
+    // Returns false for anything that isn't a bench option.
+    boolean option(String arg)  {
+        if (arg.startsWith("--warmup="))    {
+            warmup = count(arg, 0);
+        } else if (arg.startsWith("--iterations=")) {
+            iterations = count(arg, 1);
+        } else if (arg.startsWith("--function="))   {
+            function = value(arg);
+        } else if (arg.startsWith("--json="))   {
+            json = value(arg);
+        } else  {
+            return false;
+        }
+        return true;
+    }
+
+    private static int count(String arg, int min)   {
+        try {
+            int value = Integer.parseInt(value(arg));
+            if (value >= min)   return value;
+        } catch (NumberFormatException e)   {
+        }
+        Yazz.usage();
+        return 0;
+    }
+
+    private static String value(String arg) {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        if (value.isEmpty())    Yazz.usage();
+        return value;
+    }
+
+    // Returns the exit code, using the same ones as running the script.
+    int run(String path, VM vm) throws IOException  {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        List<Stmt> statements = Yazz.parse(new String(bytes, Charset.defaultCharset()));
+        if (statements == null) return 65;
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long[] times = new long[iterations];
+        long allocated;
+        try {
+            // A YazzCallable, or on the VM, usually a VmClosure.
+            Object callee = null;
+            if (function != null)   {
+                Yazz.execute(statements);
+                if (Yazz.hadRuntimeError)   return 70;
+                callee = callee(function);
+                if (callee == null) {
+                    System.err.println("'" + function + "' is not a function that takes no arguments.");
+                    return 70;
+                }
+            }
+
+            for (int i = 0; i < warmup; i++)    {
+                runOnce(statements, callee, vm);
+                if (Yazz.hadRuntimeError)   return 70;
+            }
+
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < iterations; i++)    {
+                long start = System.nanoTime();
+                runOnce(statements, callee, vm);
+                times[i] = System.nanoTime() - start;
+                if (Yazz.hadRuntimeError)   return 70;
+            }
+            allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        } finally   {
+            System.setOut(out);
+        }
+
+        Stats stats = new Stats(times, allocated);
+        String engine = vm != null ? "vm" : JitCompiler.enabled ? "interpreter+jit" : "interpreter";
+        report(out, path, engine, stats);
+        if (json != null)   {
+            Files.write(Paths.get(json), json(path, engine, stats).getBytes(StandardCharsets.UTF_8));
+        }
+        return 0;
+    }
+
+    private void runOnce(List<Stmt> statements, Object callee, VM vm) {
+        if (callee == null) {
+            Yazz.execute(statements);
+            return;
+        }
+        if (callee instanceof VmClosure)    {
+            vm.call((VmClosure)callee);
+            return;
+        }
+        Token token = new Token(TokenType.IDENTIFIER, function, null, 0);
+        try {
+            ((YazzCallable)callee).call0(interpreter, token);
+        } catch (RuntimeError error)    {
+            Yazz.runtimeError(error);
+        }
+    }
+
+    private Object callee(String name)    {
+        Token token = new Token(TokenType.IDENTIFIER, name, null, 0);
+        Object value;
+        try {
+            value = interpreter.globals.get(token);
+        } catch (RuntimeError error)    {
+            return null;
+        }
+        if (value instanceof VmClosure && ((VmClosure)value).function.arity == 0)   return value;
+        if (value instanceof YazzCallable && ((YazzCallable)value).arity() == 0)    return value;
+        return null;
+    }
+
+    // Bytes allocated by this thread so far, or -1 if the JVM can't tell.
+    private static long allocatedBytes()    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))  return -1;
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean)threads;
+        if (!sun.isThreadAllocatedMemoryEnabled())  return -1;
+        return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void report(PrintStream out, String path, String engine, Stats stats)   {
+        String target = function == null ? path : path + " " + function + "()";
+        out.printf("%s on %s: %d iterations after %d warmup%n", target, engine, iterations, warmup);
+        out.println("  mean    " + duration(stats.mean));
+        out.println("  p50     " + duration(stats.p50));
+        out.println("  p99     " + duration(stats.p99));
+        out.println("  stddev  " + duration(stats.stddev));
+        out.println("  min     " + duration(stats.min));
+        out.println("  max     " + duration(stats.max));
+        if (stats.bytesPerOp >= 0)  {
+            out.println("  alloc   " + size(stats.bytesPerOp) + "/op, " + size(stats.allocationRate) + "/s");
+        }
+    }
+
+    private static String duration(double nanos)    {
+        if (nanos < 1e3)    return String.format(Locale.ROOT, "%.0f ns", nanos);
+        if (nanos < 1e6)    return String.format(Locale.ROOT, "%.2f us", nanos / 1e3);
+        if (nanos < 1e9)    return String.format(Locale.ROOT, "%.2f ms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.3f s", nanos / 1e9);
+    }
+
+    static String size(double bytes)    {
+        if (bytes < 1024)   return String.format(Locale.ROOT, "%.0f B", bytes);
+        if (bytes < 1024 * 1024)    return String.format(Locale.ROOT, "%.1f KB", bytes / 1024);
+        if (bytes < 1024 * 1024 * 1024) return String.format(Locale.ROOT, "%.1f MB", bytes / (1024 * 1024));
+        return String.format(Locale.ROOT, "%.2f GB", bytes / (1024 * 1024 * 1024));
+    }
+
+    private String json(String path, String engine, Stats stats)    {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        field(builder, "script", Json.write(path));
+        field(builder, "function", Json.write(function));
+        field(builder, "engine", Json.write(engine));
+        field(builder, "java", Json.write(System.getProperty("java.version")));
+        field(builder, "warmup", String.valueOf(warmup));
+        field(builder, "iterations", String.valueOf(iterations));
+        field(builder, "unit", Json.write("ns"));
+        field(builder, "mean", number(stats.mean));
+        field(builder, "p50", number(stats.p50));
+        field(builder, "p99", number(stats.p99));
+        field(builder, "stddev", number(stats.stddev));
+        field(builder, "min", number(stats.min));
+        field(builder, "max", number(stats.max));
+        field(builder, "allocatedBytesPerOp", stats.bytesPerOp < 0 ? "null" : number(stats.bytesPerOp));
+        field(builder, "allocationBytesPerSecond", stats.bytesPerOp < 0 ? "null" : number(stats.allocationRate));
+
+        StringBuilder samples = new StringBuilder("[");
+        for (int i = 0; i < stats.times.length; i++)    {
+            if (i > 0)  samples.append(", ");
+            samples.append(stats.times[i]);
+        }
+        builder.append("  \"samples\": ").append(samples).append("]\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    private static void field(StringBuilder builder, String name, String value) {
+        builder.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    private static String number(double value)  {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // Run times in the order they were measured, and what they add up to.
+    private static class Stats  {
+        final long[] times;
+        final double mean;
+        final double p50;
+        final double p99;
+        final double stddev;
+        final double min;
+        final double max;
+        final double bytesPerOp;
+        final double allocationRate;
+
+        Stats(long[] times, long allocated)  {
+            this.times = times;
+            long[] sorted = times.clone();
+            Arrays.sort(sorted);
+
+            long total = 0;
+            for (long time : times) total += time;
+            mean = (double)total / times.length;
+
+            double squares = 0;
+            for (long time : times) squares += (time - mean) * (time - mean);
+            stddev = times.length > 1 ? Math.sqrt(squares / (times.length - 1)) : 0;
+
+            p50 = percentile(sorted, 50);
+            p99 = percentile(sorted, 99);
+            min = sorted[0];
+            max = sorted[sorted.length - 1];
+
+            bytesPerOp = allocated < 0 ? -1 : (double)allocated / times.length;
+            allocationRate = allocated < 0 ? -1 : allocated / (total / 1e9);
+        }
+
+        // Nearest-rank percentile.
+        private static double percentile(long[] sorted, int percent)    {
+            int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
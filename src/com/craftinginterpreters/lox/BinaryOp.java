@@ -0,0 +1,192 @@
+package com.craftinginterpreters.lox;
+
+// The operation an Expr.Binary node performs. Every node starts out
+// UNINITIALIZED and rewrites itself on its first evaluation into the
+// variant that matches the operator and the operand types it saw, so later
+// evaluations skip the operator switch and the separate type checks. A
+// variant that meets operands it wasn't specialized for rewrites the node to
+// GENERIC for good.
+enum BinaryOp {
+    UNINITIALIZED {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            expr.op = specialize(expr.operator.type, left, right);
+            return expr.op.apply(expr, left, right);
+        }
+    },
+
+    ADD_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left + (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    ADD_STRINGS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof String && right instanceof String)  {
+                return (String)left + (String)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    SUBTRACT_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left - (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    MULTIPLY_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left * (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    DIVIDE_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left / (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    GREATER_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left > (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    GREATER_EQUAL_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left >= (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    LESS_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left < (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    LESS_EQUAL_NUMBERS {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            if (left instanceof Double && right instanceof Double)  {
+                return (double)left <= (double)right;
+            }
+            return generalize(expr, left, right);
+        }
+    },
+
+    EQUAL {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            return Interpreter.isEqual(left, right);
+        }
+    },
+
+    NOT_EQUAL {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            return !Interpreter.isEqual(left, right);
+        }
+    },
+
+    GENERIC {
+        @Override
+        Object apply(Expr.Binary expr, Object left, Object right)  {
+            switch  (expr.operator.type)    {
+                case GREATER:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left > (double)right;
+                case GREATER_EQUAL:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left >= (double)right;
+                case LESS:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left < (double)right;
+                case LESS_EQUAL:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left <= (double)right;
+                case MINUS:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left - (double)right;
+                case PLUS:
+                    if (left instanceof Double && right instanceof Double)  {
+                        return (double)left + (double)right;
+                    }
+                    if (left instanceof String && right instanceof String)  {
+                        return (String)left + (String)right;
+                    }
+                    throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                case SLASH:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left / (double)right;
+                case STAR:
+                    Interpreter.checkNumberOperands(expr.operator, left, right);
+                    return (double)left * (double)right;
+                case BANG_EQUAL:
+                    return !Interpreter.isEqual(left, right);
+                case EQUAL_EQUAL:
+                    return Interpreter.isEqual(left, right);
+            }
+
+            // Unreachable
+            return null;
+        }
+    };
+
+    abstract Object apply(Expr.Binary expr, Object left, Object right);
+
+    private static BinaryOp specialize(TokenType operator, Object left, Object right)  {
+        boolean numbers = left instanceof Double && right instanceof Double;
+        switch  (operator)  {
+            case PLUS:
+                if (numbers)    return ADD_NUMBERS;
+                if (left instanceof String && right instanceof String)  return ADD_STRINGS;
+                break;
+            case MINUS:         if (numbers) return SUBTRACT_NUMBERS; break;
+            case STAR:          if (numbers) return MULTIPLY_NUMBERS; break;
+            case SLASH:         if (numbers) return DIVIDE_NUMBERS; break;
+            case GREATER:       if (numbers) return GREATER_NUMBERS; break;
+            case GREATER_EQUAL: if (numbers) return GREATER_EQUAL_NUMBERS; break;
+            case LESS:          if (numbers) return LESS_NUMBERS; break;
+            case LESS_EQUAL:    if (numbers) return LESS_EQUAL_NUMBERS; break;
+            case EQUAL_EQUAL:   return EQUAL;
+            case BANG_EQUAL:    return NOT_EQUAL;
+        }
+        return GENERIC;
+    }
+
+    private static Object generalize(Expr.Binary expr, Object left, Object right)  {
+        expr.op = GENERIC;
+        return GENERIC.apply(expr, left, right);
+    }
+}
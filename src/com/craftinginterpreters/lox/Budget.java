@@ -0,0 +1,39 @@
+package com.craftinginterpreters.lox;
+
+// A limit on how much work a script may do: fuel, spent one unit per loop
+// iteration and per call, and a wall-clock deadline. Reading the clock
+// costs far more than counting, so the deadline is only checked every
+// CLOCK_INTERVAL units.
+final class Budget {
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private long fuel;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private int untilClock = CLOCK_INTERVAL;
+
+    // fuel <= 0 and timeoutMillis <= 0 each mean no limit of that kind.
+    Budget(long fuel, long timeoutMillis)   {
+        this.fuel = fuel > 0 ? fuel : Long.MAX_VALUE;
+        this.hasDeadline = timeoutMillis > 0;
+        this.deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+    }
+
+    // False once the script has run out of either fuel or time.
+    boolean spend() {
+        if (--fuel < 0) return false;
+        if (--untilClock == 0)  {
+            untilClock = CLOCK_INTERVAL;
+            if (hasDeadline && System.nanoTime() - deadline > 0)    return false;
+        }
+        return true;
+    }
+
+    void spend(Token token) {
+        if (!spend())   throw new RuntimeError(token, reason());
+    }
+
+    String reason() {
+        return fuel < 0 ? "Execution budget exhausted." : "Execution time limit exceeded.";
+    }
+}
@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+
+    Object[] constants = new Object[16];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(byte b, int line)    {
+        if (count == code.length)   {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = b;
+        lines[count] = line;
+        count++;
+    }
+
+    // Numbers and strings are shared between uses; everything else (tokens,
+    // functions) gets its own slot so that each use keeps its own line.
+    int addConstant(Object value)   {
+        boolean shared = value instanceof Double || value instanceof String;
+        if (shared) {
+            Integer index = constantIndex.get(value);
+            if (index != null)  return index;
+        }
+
+        if (constantCount == constants.length)  {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        if (shared) constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+}
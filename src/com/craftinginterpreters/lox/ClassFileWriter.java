@@ -0,0 +1,319 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format for the JIT: one class with a
+// constant pool, fields, and methods with code. The files are version 49,
+// which predates stack map frames, so branches need no frame bookkeeping
+// and the JVM verifies the code by type inference instead.
+class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream memberBytes = new ByteArrayOutputStream();
+    private final DataOutputStream members = new DataOutputStream(memberBytes);
+    private int fieldCount = 0;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    int utf8(String value)  {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null)  return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put("U" + value, poolCount);
+        return poolCount++;
+    }
+
+    int classRef(String internalName)   {
+        return entry("C" + internalName, 7, utf8(internalName), -1);
+    }
+
+    int fieldRef(String owner, String name, String descriptor)  {
+        return entry("F" + owner + "." + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return entry("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return entry("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    private int entry(String key, int tag, int first, int second)   {
+        Integer index = poolIndex.get(key);
+        if (index != null)  return index;
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0)    pool.writeShort(second);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    void field(int access, String name, String descriptor)  {
+        try {
+            members.writeShort(access);
+            members.writeShort(utf8(name));
+            members.writeShort(utf8(descriptor));
+            members.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fieldCount++;
+    }
+
+    void method(int access, String name, String descriptor, Code code)  {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(code.length);
+            out.write(code.bytes, 0, code.length);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toBytes(String name, String superName, String... interfaces) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int[] interfaceRefs = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceRefs[i] = classRef(interfaces[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaceRefs.length);
+            for (int ref : interfaceRefs)   {
+                out.writeShort(ref);
+            }
+            out.writeShort(fieldCount);
+            memberBytes.writeTo(out);
+            out.writeShort(methods.size());
+            for (byte[] method : methods)   {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The body of one method. Every instruction goes through a method that
+    // also tracks the operand stack, so max_stack comes out right without
+    // a separate pass.
+    static class Code {
+        private final ClassFileWriter file;
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        Code(ClassFileWriter file, int parameterSlots)  {
+            this.file = file;
+            this.maxLocals = parameterSlots;
+        }
+
+        void op(int opcode, int stackEffect)    {
+            u1(opcode);
+            adjust(stackEffect);
+        }
+
+        void push(int value)    {
+            if (value >= -1 && value <= 5)  {
+                u1(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)  {
+                u1(0x10);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)    {
+                u1(0x11);
+                u2(value);
+            } else  {
+                throw new IllegalArgumentException("Constant too large: " + value);
+            }
+            adjust(1);
+        }
+
+        void load(int local)    {
+            local(0x2a, 0x19, local);
+            adjust(1);
+        }
+
+        void store(int local)   {
+            local(0x4b, 0x3a, local);
+            adjust(-1);
+        }
+
+        private void local(int shortForm, int longForm, int local)  {
+            if (local > 255)    throw new IllegalArgumentException("Too many locals.");
+            if (local <= 3) {
+                u1(shortForm + local);
+            } else  {
+                u1(longForm);
+                u1(local);
+            }
+            maxLocals = Math.max(maxLocals, local + 1);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor)    {
+            u1(opcode);
+            u2(file.fieldRef(owner, name, descriptor));
+            // Only reference fields are ever accessed.
+            if (opcode == GETSTATIC)    adjust(1);
+            if (opcode == PUTFIELD) adjust(-2);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor)   {
+            u1(opcode);
+            u2(file.methodRef(owner, name, descriptor));
+            int effect = -parameterSlots(descriptor);
+            if (opcode != INVOKESTATIC) effect--;
+            if (descriptor.charAt(descriptor.length() - 1) != 'V')  effect++;
+            adjust(effect);
+        }
+
+        void type(int opcode, String internalName)  {
+            u1(opcode);
+            u2(file.classRef(internalName));
+        }
+
+        Label label()   {
+            return new Label();
+        }
+
+        void jump(int opcode, Label target) {
+            int at = length;
+            u1(opcode);
+            u2(0);
+            adjust(opcode == GOTO ? 0 : -1);
+            target.refer(at);
+        }
+
+        void mark(Label label)  {
+            label.position = length;
+            for (int i = 0; i < label.count; i++)   {
+                int at = label.references[i];
+                patch(at + 1, length - at);
+            }
+        }
+
+        private void patch(int at, int offset)  {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)  {
+                throw new IllegalArgumentException("Jump too large.");
+            }
+            bytes[at] = (byte)(offset >> 8);
+            bytes[at + 1] = (byte)offset;
+        }
+
+        private void adjust(int effect) {
+            stack += effect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u1(int value)  {
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            bytes[length++] = (byte)value;
+        }
+
+        private void u2(int value)  {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private static int parameterSlots(String descriptor)    {
+            int slots = 0;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                boolean array = c == '[';
+                while (c == '[')    c = descriptor.charAt(++i);
+                if (c == 'L')   i = descriptor.indexOf(';', i);
+                slots += !array && (c == 'J' || c == 'D') ? 2 : 1;
+                i++;
+            }
+            return slots;
+        }
+
+        // Jumps are only ever backwards to a label already marked or forwards
+        // to one marked later; either way the offset is patched in place.
+        class Label {
+            private int position = -1;
+            private int[] references = new int[2];
+            private int count = 0;
+
+            private void refer(int at)  {
+                if (position >= 0)  {
+                    patch(at + 1, position - at);
+                    return;
+                }
+                if (count == references.length) references = Arrays.copyOf(references, count * 2);
+                references[count++] = at;
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.craftinginterpreters.lox;
+
+// Generated by GenerateAST. The storage is CompactStore's.
+class CompactAst extends CompactStore implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    static final byte ASSIGN = 0;
+    static final byte BINARY = 1;
+    static final byte CALL = 2;
+    static final byte GET = 3;
+    static final byte GROUPING = 4;
+    static final byte LITERAL = 5;
+    static final byte LOGICAL = 6;
+    static final byte SET = 7;
+    static final byte SUPER = 8;
+    static final byte THIS = 9;
+    static final byte UNARY = 10;
+    static final byte VARIABLE = 11;
+    static final byte BLOCK = 12;
+    static final byte CLASS = 13;
+    static final byte EXPRESSION = 14;
+    static final byte FUNCTION = 15;
+    static final byte IF = 16;
+    static final byte IMPORT = 17;
+    static final byte PRINT = 18;
+    static final byte RETURN = 19;
+    static final byte VAR = 20;
+    static final byte WHILE = 21;
+
+    int assignName(int node) { return field(node, 0); }
+    int assignValue(int node) { return field(node, 1); }
+    int assignDepth(int node) { return field(node, 2); }
+    int assignSlot(int node) { return field(node, 3); }
+
+    int binaryLeft(int node) { return field(node, 0); }
+    int binaryOperator(int node) { return field(node, 1); }
+    int binaryRight(int node) { return field(node, 2); }
+
+    int callCallee(int node) { return field(node, 0); }
+    int callParen(int node) { return field(node, 1); }
+    int callArguments(int node) { return field(node, 2); }
+    boolean callTailCall(int node) { return field(node, 3) != 0; }
+
+    int getObject(int node) { return field(node, 0); }
+    int getName(int node) { return field(node, 1); }
+
+    int groupingExpression(int node) { return field(node, 0); }
+
+    Object literalValue(int node) { return constant(field(node, 0)); }
+
+    int logicalLeft(int node) { return field(node, 0); }
+    int logicalOperator(int node) { return field(node, 1); }
+    int logicalRight(int node) { return field(node, 2); }
+
+    int setObject(int node) { return field(node, 0); }
+    int setName(int node) { return field(node, 1); }
+    int setValue(int node) { return field(node, 2); }
+
+    int superKeyword(int node) { return field(node, 0); }
+    int superMethod(int node) { return field(node, 1); }
+    int superDepth(int node) { return field(node, 2); }
+    int superSlot(int node) { return field(node, 3); }
+
+    int thisKeyword(int node) { return field(node, 0); }
+    int thisDepth(int node) { return field(node, 1); }
+    int thisSlot(int node) { return field(node, 2); }
+
+    int unaryOperator(int node) { return field(node, 0); }
+    int unaryRight(int node) { return field(node, 1); }
+
+    int variableName(int node) { return field(node, 0); }
+    int variableDepth(int node) { return field(node, 1); }
+    int variableSlot(int node) { return field(node, 2); }
+
+    int blockStatements(int node) { return field(node, 0); }
+
+    int className(int node) { return field(node, 0); }
+    int classSuperclass(int node) { return field(node, 1); }
+    int classMethods(int node) { return field(node, 2); }
+
+    int expressionExpression(int node) { return field(node, 0); }
+
+    int functionName(int node) { return field(node, 0); }
+    int functionParams(int node) { return field(node, 1); }
+    int functionBody(int node) { return field(node, 2); }
+    boolean functionMethod(int node) { return field(node, 3) != 0; }
+
+    int ifCondition(int node) { return field(node, 0); }
+    int ifThenBranch(int node) { return field(node, 1); }
+    int ifElseBranch(int node) { return field(node, 2); }
+
+    int importKeyword(int node) { return field(node, 0); }
+    int importPath(int node) { return field(node, 1); }
+
+    int printExpression(int node) { return field(node, 0); }
+
+    int returnKeyword(int node) { return field(node, 0); }
+    int returnValue(int node) { return field(node, 1); }
+
+    int varName(int node) { return field(node, 0); }
+    int varInitializer(int node) { return field(node, 1); }
+
+    int whileKeyword(int node) { return field(node, 0); }
+    int whileCondition(int node) { return field(node, 1); }
+    int whileBody(int node) { return field(node, 2); }
+
+    @Override
+    int encode(Expr expr) {
+    return expr == null ? -1 : expr.accept(this);
+    }
+
+    @Override
+    int encode(Stmt stmt) {
+    return stmt == null ? -1 : stmt.accept(this);
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+    int node = node(ASSIGN, 4);
+    set(node, 0, token(expr.name));
+    set(node, 1, encode(expr.value));
+    set(node, 2, expr.depth);
+    set(node, 3, expr.slot);
+    return node;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+    int node = node(BINARY, 3);
+    set(node, 0, encode(expr.left));
+    set(node, 1, token(expr.operator));
+    set(node, 2, encode(expr.right));
+    return node;
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+    int node = node(CALL, 4);
+    set(node, 0, encode(expr.callee));
+    set(node, 1, token(expr.paren));
+    int list2 = list(expr.arguments.size());
+    for (int i = 0; i < expr.arguments.size(); i++) {
+    element(list2, i, encode(expr.arguments.get(i)));
+    }
+    set(node, 2, list2);
+    set(node, 3, expr.tailCall ? 1 : 0);
+    return node;
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+    int node = node(GET, 2);
+    set(node, 0, encode(expr.object));
+    set(node, 1, token(expr.name));
+    return node;
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+    int node = node(GROUPING, 1);
+    set(node, 0, encode(expr.expression));
+    return node;
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+    int node = node(LITERAL, 1);
+    set(node, 0, constant(expr.value));
+    return node;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+    int node = node(LOGICAL, 3);
+    set(node, 0, encode(expr.left));
+    set(node, 1, token(expr.operator));
+    set(node, 2, encode(expr.right));
+    return node;
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+    int node = node(SET, 3);
+    set(node, 0, encode(expr.object));
+    set(node, 1, token(expr.name));
+    set(node, 2, encode(expr.value));
+    return node;
+    }
+
+    @Override
+    public Integer visitSuperExpr(Expr.Super expr) {
+    int node = node(SUPER, 4);
+    set(node, 0, token(expr.keyword));
+    set(node, 1, token(expr.method));
+    set(node, 2, expr.depth);
+    set(node, 3, expr.slot);
+    return node;
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+    int node = node(THIS, 3);
+    set(node, 0, token(expr.keyword));
+    set(node, 1, expr.depth);
+    set(node, 2, expr.slot);
+    return node;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+    int node = node(UNARY, 2);
+    set(node, 0, token(expr.operator));
+    set(node, 1, encode(expr.right));
+    return node;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+    int node = node(VARIABLE, 3);
+    set(node, 0, token(expr.name));
+    set(node, 1, expr.depth);
+    set(node, 2, expr.slot);
+    return node;
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+    int node = node(BLOCK, 1);
+    int list0 = list(stmt.statements.size());
+    for (int i = 0; i < stmt.statements.size(); i++) {
+    element(list0, i, encode(stmt.statements.get(i)));
+    }
+    set(node, 0, list0);
+    return node;
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+    int node = node(CLASS, 3);
+    set(node, 0, token(stmt.name));
+    set(node, 1, encode(stmt.superclass));
+    int list2 = list(stmt.methods.size());
+    for (int i = 0; i < stmt.methods.size(); i++) {
+    element(list2, i, encode(stmt.methods.get(i)));
+    }
+    set(node, 2, list2);
+    return node;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+    int node = node(EXPRESSION, 1);
+    set(node, 0, encode(stmt.expression));
+    return node;
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+    int node = node(FUNCTION, 4);
+    set(node, 0, token(stmt.name));
+    int list1 = list(stmt.params.size());
+    for (int i = 0; i < stmt.params.size(); i++) {
+    element(list1, i, token(stmt.params.get(i)));
+    }
+    set(node, 1, list1);
+    int list2 = list(stmt.body.size());
+    for (int i = 0; i < stmt.body.size(); i++) {
+    element(list2, i, encode(stmt.body.get(i)));
+    }
+    set(node, 2, list2);
+    set(node, 3, stmt.method ? 1 : 0);
+    return node;
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+    int node = node(IF, 3);
+    set(node, 0, encode(stmt.condition));
+    set(node, 1, encode(stmt.thenBranch));
+    set(node, 2, encode(stmt.elseBranch));
+    return node;
+    }
+
+    @Override
+    public Integer visitImportStmt(Stmt.Import stmt) {
+    int node = node(IMPORT, 2);
+    set(node, 0, token(stmt.keyword));
+    set(node, 1, token(stmt.path));
+    return node;
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+    int node = node(PRINT, 1);
+    set(node, 0, encode(stmt.expression));
+    return node;
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+    int node = node(RETURN, 2);
+    set(node, 0, token(stmt.keyword));
+    set(node, 1, encode(stmt.value));
+    return node;
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+    int node = node(VAR, 2);
+    set(node, 0, token(stmt.name));
+    set(node, 1, encode(stmt.initializer));
+    return node;
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+    int node = node(WHILE, 3);
+    set(node, 0, token(stmt.keyword));
+    set(node, 1, encode(stmt.condition));
+    set(node, 2, encode(stmt.body));
+    return node;
+    }
+
+    @Override
+    Expr expr(int node) {
+    if (node < 0) return null;
+    switch (kind(node)) {
+    case ASSIGN: {
+    Expr.Assign expr = new Expr.Assign(token(assignName(node)), expr(assignValue(node)));
+    expr.depth = assignDepth(node);
+    expr.slot = assignSlot(node);
+    return expr;
+    }
+    case BINARY: {
+    Expr.Binary expr = new Expr.Binary(expr(binaryLeft(node)), token(binaryOperator(node)), expr(binaryRight(node)));
+    return expr;
+    }
+    case CALL: {
+    Expr.Call expr = new Expr.Call(expr(callCallee(node)), token(callParen(node)), exprList(callArguments(node)));
+    expr.tailCall = callTailCall(node);
+    return expr;
+    }
+    case GET: {
+    Expr.Get expr = new Expr.Get(expr(getObject(node)), token(getName(node)));
+    return expr;
+    }
+    case GROUPING: {
+    Expr.Grouping expr = new Expr.Grouping(expr(groupingExpression(node)));
+    return expr;
+    }
+    case LITERAL: {
+    Expr.Literal expr = new Expr.Literal(literalValue(node));
+    return expr;
+    }
+    case LOGICAL: {
+    Expr.Logical expr = new Expr.Logical(expr(logicalLeft(node)), token(logicalOperator(node)), expr(logicalRight(node)));
+    return expr;
+    }
+    case SET: {
+    Expr.Set expr = new Expr.Set(expr(setObject(node)), token(setName(node)), expr(setValue(node)));
+    return expr;
+    }
+    case SUPER: {
+    Expr.Super expr = new Expr.Super(token(superKeyword(node)), token(superMethod(node)));
+    expr.depth = superDepth(node);
+    expr.slot = superSlot(node);
+    return expr;
+    }
+    case THIS: {
+    Expr.This expr = new Expr.This(token(thisKeyword(node)));
+    expr.depth = thisDepth(node);
+    expr.slot = thisSlot(node);
+    return expr;
+    }
+    case UNARY: {
+    Expr.Unary expr = new Expr.Unary(token(unaryOperator(node)), expr(unaryRight(node)));
+    return expr;
+    }
+    case VARIABLE: {
+    Expr.Variable expr = new Expr.Variable(token(variableName(node)));
+    expr.depth = variableDepth(node);
+    expr.slot = variableSlot(node);
+    return expr;
+    }
+    }
+    throw new IllegalStateException("Not an expression node.");
+    }
+
+    @Override
+    Stmt stmt(int node) {
+    if (node < 0) return null;
+    switch (kind(node)) {
+    case BLOCK: {
+    Stmt.Block stmt = new Stmt.Block(stmtList(blockStatements(node)));
+    return stmt;
+    }
+    case CLASS: {
+    Stmt.Class stmt = new Stmt.Class(token(className(node)), (Expr.Variable)expr(classSuperclass(node)), functionList(classMethods(node)));
+    return stmt;
+    }
+    case EXPRESSION: {
+    Stmt.Expression stmt = new Stmt.Expression(expr(expressionExpression(node)));
+    return stmt;
+    }
+    case FUNCTION: {
+    Stmt.Function stmt = new Stmt.Function(token(functionName(node)), tokenList(functionParams(node)), stmtList(functionBody(node)));
+    stmt.method = functionMethod(node);
+    return stmt;
+    }
+    case IF: {
+    Stmt.If stmt = new Stmt.If(expr(ifCondition(node)), stmt(ifThenBranch(node)), stmt(ifElseBranch(node)));
+    return stmt;
+    }
+    case IMPORT: {
+    Stmt.Import stmt = new Stmt.Import(token(importKeyword(node)), token(importPath(node)));
+    return stmt;
+    }
+    case PRINT: {
+    Stmt.Print stmt = new Stmt.Print(expr(printExpression(node)));
+    return stmt;
+    }
+    case RETURN: {
+    Stmt.Return stmt = new Stmt.Return(token(returnKeyword(node)), expr(returnValue(node)));
+    return stmt;
+    }
+    case VAR: {
+    Stmt.Var stmt = new Stmt.Var(token(varName(node)), expr(varInitializer(node)));
+    return stmt;
+    }
+    case WHILE: {
+    Stmt.While stmt = new Stmt.While(token(whileKeyword(node)), expr(whileCondition(node)), stmt(whileBody(node)));
+    return stmt;
+    }
+    }
+    throw new IllegalStateException("Not a statement node.");
+    }
+}
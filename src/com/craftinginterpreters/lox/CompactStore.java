@@ -0,0 +1,246 @@
+package com.craftinginterpreters.lox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// The arrays under CompactAst, which GenerateAST writes on top of this
+// from the same descriptions as Expr and Stmt. A tree kept here costs a
+// few ints a node instead of a few objects. A node is an int: its kind
+// is a byte, and its fields are ints in one shared array, each a node, a
+// token, a list, a constant or something the Resolver filled in. -1
+// stands for a missing node. Lists are their length followed by their
+// elements. Nodes are only built again from the arrays as they are
+// needed, and statement lists, a function's body among them, only when
+// they are first used.
+abstract class CompactStore {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private byte[] kinds = new byte[256];
+    private int[] starts = new int[256];
+    private int nodeCount = 0;
+    private int[] data = new int[1024];
+    private int dataCount = 0;
+
+    // A token is its type, its line and either an identifier's symbol or
+    // the index of its lexeme among the constants. A string or number
+    // token has its literal in the constant after its lexeme.
+    private byte[] tokenTypes = new byte[256];
+    private int[] tokenLines = new int[256];
+    private int[] tokenValues = new int[256];
+    private int tokenCount = 0;
+
+    // Lexemes and literal values, each kept once.
+    private final ArrayList<Object> constants = new ArrayList<>();
+    private Map<Object, Integer> constantIndex = new HashMap<>();
+
+    // The top-level statements, in order.
+    private int[] roots = new int[64];
+    private int rootCount = 0;
+
+    abstract int encode(Expr expr);
+    abstract int encode(Stmt stmt);
+    abstract Expr expr(int node);
+    abstract Stmt stmt(int node);
+
+    void add(Stmt statement)    {
+        int root = encode(statement);
+        if (rootCount == roots.length)  roots = Arrays.copyOf(roots, rootCount * 2);
+        roots[rootCount++] = root;
+    }
+
+    // Once everything has been added, cuts the arrays down to what they
+    // hold and drops what only adding needs. Nothing more can be added.
+    void trim() {
+        kinds = Arrays.copyOf(kinds, nodeCount);
+        starts = Arrays.copyOf(starts, nodeCount);
+        data = Arrays.copyOf(data, dataCount);
+        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount);
+        tokenLines = Arrays.copyOf(tokenLines, tokenCount);
+        tokenValues = Arrays.copyOf(tokenValues, tokenCount);
+        roots = Arrays.copyOf(roots, rootCount);
+        constants.trimToSize();
+        constantIndex = null;
+    }
+
+    int size()  {
+        return rootCount;
+    }
+
+    // Builds the nodes of a top-level statement. Each call builds new ones.
+    Stmt statement(int index)   {
+        return stmt(roots[index]);
+    }
+
+    final byte kind(int node)   {
+        return kinds[node];
+    }
+
+    // Adds a node with room for its fields.
+    final int node(byte kind, int fields)   {
+        if (nodeCount == kinds.length)  {
+            kinds = Arrays.copyOf(kinds, nodeCount * 2);
+            starts = Arrays.copyOf(starts, nodeCount * 2);
+        }
+        kinds[nodeCount] = kind;
+        starts[nodeCount] = reserve(fields);
+        return nodeCount++;
+    }
+
+    final int field(int node, int field)    {
+        return data[starts[node] + field];
+    }
+
+    // Fields are set once their value has been encoded, which may have
+    // grown the array, so they are always written through here.
+    final void set(int node, int field, int value)  {
+        data[starts[node] + field] = value;
+    }
+
+    final int list(int size)    {
+        int list = reserve(size + 1);
+        data[list] = size;
+        return list;
+    }
+
+    final void element(int list, int index, int value)  {
+        data[list + 1 + index] = value;
+    }
+
+    final int listSize(int list)    {
+        return data[list];
+    }
+
+    final int listElement(int list, int index)  {
+        return data[list + 1 + index];
+    }
+
+    private int reserve(int ints)   {
+        if (dataCount + ints > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, dataCount + ints));
+        }
+        int start = dataCount;
+        dataCount += ints;
+        return start;
+    }
+
+    final int token(Token token)    {
+        if (tokenCount == tokenTypes.length)    {
+            tokenTypes = Arrays.copyOf(tokenTypes, tokenCount * 2);
+            tokenLines = Arrays.copyOf(tokenLines, tokenCount * 2);
+            tokenValues = Arrays.copyOf(tokenValues, tokenCount * 2);
+        }
+        tokenTypes[tokenCount] = (byte)token.type.ordinal();
+        tokenLines[tokenCount] = token.line;
+        if (token.type == TokenType.IDENTIFIER) {
+            tokenValues[tokenCount] = token.symbol().index;
+        } else if (isLiteral(token.type))   {
+            tokenValues[tokenCount] = constants.size();
+            constants.add(token.lexeme());
+            constants.add(token.literal);
+        } else  {
+            tokenValues[tokenCount] = constant(token.lexeme());
+        }
+        return tokenCount++;
+    }
+
+    final Token token(int token)    {
+        if (token < 0)  return null;
+        TokenType type = TOKEN_TYPES[tokenTypes[token]];
+        int value = tokenValues[token];
+        if (type == TokenType.IDENTIFIER)   {
+            return new Token(Symbol.at(value), null, 0, tokenLines[token]);
+        }
+        Object literal = isLiteral(type) ? constants.get(value + 1) : null;
+        return new Token(type, (String)constants.get(value), literal, tokenLines[token]);
+    }
+
+    final TokenType tokenType(int token)    {
+        return TOKEN_TYPES[tokenTypes[token]];
+    }
+
+    final int tokenLine(int token)  {
+        return tokenLines[token];
+    }
+
+    private static boolean isLiteral(TokenType type)    {
+        return type == TokenType.STRING || type == TokenType.NUMBER;
+    }
+
+    // Nil is -1, since a map can't hold null.
+    final int constant(Object value)    {
+        if (value == null)  return -1;
+        Integer index = constantIndex.get(value);
+        if (index == null)  {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    final Object constant(int index)    {
+        return index < 0 ? null : constants.get(index);
+    }
+
+    final List<Expr> exprList(int list) {
+        List<Expr> exprs = new ArrayList<>(listSize(list));
+        for (int i = 0; i < listSize(list); i++)    {
+            exprs.add(expr(listElement(list, i)));
+        }
+        return exprs;
+    }
+
+    final List<Token> tokenList(int list)   {
+        List<Token> tokens = new ArrayList<>(listSize(list));
+        for (int i = 0; i < listSize(list); i++)    {
+            tokens.add(token(listElement(list, i)));
+        }
+        return tokens;
+    }
+
+    final List<Stmt.Function> functionList(int list)    {
+        List<Stmt.Function> functions = new ArrayList<>(listSize(list));
+        for (int i = 0; i < listSize(list); i++)    {
+            functions.add((Stmt.Function)stmt(listElement(list, i)));
+        }
+        return functions;
+    }
+
+    final List<Stmt> stmtList(int list) {
+        return new Statements(list);
+    }
+
+    // Builds its statements the first time anything looks at them.
+    private class Statements extends AbstractList<Stmt> implements RandomAccess {
+        private final int list;
+        private Stmt[] statements = null;
+
+        Statements(int list)    {
+            this.list = list;
+        }
+
+        @Override
+        public Stmt get(int index)  {
+            if (statements == null) build();
+            return statements[index];
+        }
+
+        @Override
+        public int size()   {
+            return listSize(list);
+        }
+
+        private void build()    {
+            Stmt[] built = new Stmt[listSize(list)];
+            for (int i = 0; i < built.length; i++)  {
+                built[i] = stmt(listElement(list, i));
+            }
+            statements = built;
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Lowers a resolved syntax tree into bytecode for the VM. The Resolver has
+// already reported every static error, so the compiler only tracks enough
+// scope information to map each variable onto a stack slot, an upvalue, or
+// a global.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
+    private enum FunctionType   {
+        FUNCTION, INITIALIZER, METHOD, SCRIPT
+    }
+
+    private static class Local  {
+        final String name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth)   {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue    {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    private static class ClassCompiler  {
+        final ClassCompiler enclosing;
+        boolean hasSuperclass = false;
+
+        ClassCompiler(ClassCompiler enclosing)  {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private static final int MAX_OPERAND = 0xffff;
+
+    private final Compiler enclosing;
+    private final VmFunction function;
+    private final FunctionType type;
+    private final List<Local> locals = new ArrayList<>();
+    private final List<Upvalue> upvalues = new ArrayList<>();
+    private int scopeDepth = 0;
+    private ClassCompiler currentClass;
+    private int line;
+
+    private Compiler(Compiler enclosing, FunctionType type, String name) {
+        this.enclosing = enclosing;
+        this.type = type;
+        this.function = new VmFunction(name);
+        if (enclosing != null)  {
+            this.currentClass = enclosing.currentClass;
+            this.line = enclosing.line;
+        }
+
+        // Slot zero holds the receiver for methods and the callee otherwise.
+        locals.add(new Local(type == FunctionType.METHOD || type == FunctionType.INITIALIZER ? "this" : "", 0));
+    }
+
+    static VmFunction compile(List<Stmt> statements)    {
+        Compiler compiler = new Compiler(null, FunctionType.SCRIPT, null);
+        for (Stmt statement : statements)   {
+            compiler.compile(statement);
+        }
+        return compiler.endCompiler();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private VmFunction endCompiler()    {
+        emitReturn();
+        function.upvalueCount = upvalues.size();
+        return function;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements)  {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        int nameConstant = makeConstant(stmt.name);
+        emitOp(OpCode.CLASS, nameConstant);
+        defineVariable(stmt.name);
+
+        ClassCompiler classCompiler = new ClassCompiler(currentClass);
+        currentClass = classCompiler;
+
+        if (stmt.superclass != null)    {
+            compile(stmt.superclass);
+            beginScope();
+            addLocal("super");
+
+            namedVariable(stmt.name);
+            line = stmt.superclass.name.line;
+            emitOp(OpCode.INHERIT, makeConstant(stmt.superclass.name));
+            classCompiler.hasSuperclass = true;
+        }
+
+        namedVariable(stmt.name);
+        for (Stmt.Function method : stmt.methods)   {
+            FunctionType declaration = FunctionType.METHOD;
+            if (method.name.lexeme().equals("init"))  {
+                declaration = FunctionType.INITIALIZER;
+            }
+            function(method, declaration);
+            emitOp(OpCode.METHOD, makeConstant(method.name));
+        }
+        emitOp(OpCode.POP);
+
+        if (classCompiler.hasSuperclass)    endScope();
+        currentClass = currentClass.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)   {
+        compile(stmt.expression);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)   {
+        line = stmt.name.line;
+        // Declare a local function before compiling its body so it can
+        // refer to itself recursively.
+        if (scopeDepth > 0) addLocal(stmt.name.lexeme());
+        function(stmt, FunctionType.FUNCTION);
+        if (scopeDepth == 0)    emitOp(OpCode.DEFINE_GLOBAL, makeConstant(stmt.name));
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)   {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitOp(OpCode.POP);
+        if (stmt.elseBranch != null)    compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    // Leaves nil behind, whether or not the module runs, like a call.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt)   {
+        line = stmt.keyword.line;
+        emitOp(OpCode.IMPORT, makeConstant(stmt.module));
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)   {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emitOp(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null)   {
+            compile(stmt.initializer);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = function.chunk.count;
+        compile(stmt.condition);
+
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(stmt.body);
+        // The budget is checked as the loop jumps back.
+        line = stmt.keyword.line;
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emitOp(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)   {
+        compile(expr.value);
+        line = expr.name.line;
+
+        int slot = resolveLocal(expr.name.lexeme());
+        if (slot != -1) {
+            emitOp(OpCode.SET_LOCAL, slot);
+        } else if ((slot = resolveUpvalue(expr.name.lexeme())) != -1)  {
+            emitOp(OpCode.SET_UPVALUE, slot);
+        } else {
+            emitOp(OpCode.SET_GLOBAL, makeConstant(expr.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)   {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+
+        switch  (expr.operator.type)    {
+            case GREATER:       emitOp(OpCode.GREATER); break;
+            case GREATER_EQUAL: emitOp(OpCode.GREATER_EQUAL); break;
+            case LESS:          emitOp(OpCode.LESS); break;
+            case LESS_EQUAL:    emitOp(OpCode.LESS_EQUAL); break;
+            case MINUS:         emitOp(OpCode.SUBTRACT); break;
+            case PLUS:          emitOp(OpCode.ADD); break;
+            case SLASH:         emitOp(OpCode.DIVIDE); break;
+            case STAR:          emitOp(OpCode.MULTIPLY); break;
+            case BANG_EQUAL:    emitOp(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL:   emitOp(OpCode.EQUAL); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)   {
+        // Method calls skip creating a bound method when the property turns
+        // out to be a method rather than a field.
+        if (expr.callee instanceof Expr.Get)    {
+            Expr.Get get = (Expr.Get)expr.callee;
+            compile(get.object);
+            arguments(expr);
+            line = get.name.line;
+            emitOp(OpCode.INVOKE, makeConstant(get.name));
+            emitByte((byte)expr.arguments.size());
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super)  {
+            Expr.Super sup = (Expr.Super)expr.callee;
+            line = sup.keyword.line;
+            namedVariable("this");
+            arguments(expr);
+            namedVariable("super");
+            line = sup.method.line;
+            emitOp(OpCode.SUPER_INVOKE, makeConstant(sup.method));
+            emitByte((byte)expr.arguments.size());
+            return null;
+        }
+
+        compile(expr.callee);
+        arguments(expr);
+        line = expr.paren.line;
+        emitOp(OpCode.CALL);
+        emitByte((byte)expr.arguments.size());
+        return null;
+    }
+
+    private void arguments(Expr.Call expr)  {
+        for (Expr argument : expr.arguments)    {
+            compile(argument);
+        }
+        line = expr.paren.line;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitOp(OpCode.GET_PROPERTY, makeConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)   {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitOp(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            emitOp(OpCode.TRUE);
+        } else if (expr.value.equals(false))    {
+            emitOp(OpCode.FALSE);
+        } else {
+            emitOp(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+        int endJump = emitJump(expr.operator.type == TokenType.OR ? OpCode.JUMP_IF_TRUE : OpCode.JUMP_IF_FALSE);
+        emitOp(OpCode.POP);
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitOp(OpCode.SET_PROPERTY, makeConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        namedVariable("this");
+        namedVariable("super");
+        line = expr.method.line;
+        emitOp(OpCode.GET_SUPER, makeConstant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)   {
+        line = expr.keyword.line;
+        namedVariable("this");
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+
+        switch  (expr.operator.type)    {
+            case BANG:  emitOp(OpCode.NOT); break;
+            case MINUS: emitOp(OpCode.NEGATE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)   {
+        namedVariable(expr.name);
+        return null;
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type)    {
+        Compiler compiler = new Compiler(this, type, stmt.name.lexeme());
+        compiler.beginScope();
+        for (Token param : stmt.params) {
+            compiler.addLocal(param.lexeme());
+        }
+        compiler.function.arity = stmt.params.size();
+        for (Stmt statement : stmt.body)    {
+            compiler.compile(statement);
+        }
+        VmFunction function = compiler.endCompiler();
+
+        line = stmt.name.line;
+        emitOp(OpCode.CLOSURE, makeConstant(function));
+        for (Upvalue upvalue : compiler.upvalues)   {
+            emitByte((byte)(upvalue.isLocal ? 1 : 0));
+            emitShort(upvalue.index);
+        }
+    }
+
+    private void namedVariable(Token name)  {
+        line = name.line;
+        int slot = resolveLocal(name.lexeme());
+        if (slot != -1) {
+            emitOp(OpCode.GET_LOCAL, slot);
+        } else if ((slot = resolveUpvalue(name.lexeme())) != -1)  {
+            emitOp(OpCode.GET_UPVALUE, slot);
+        } else {
+            emitOp(OpCode.GET_GLOBAL, makeConstant(name));
+        }
+    }
+
+    // Used for "this" and "super", which are always locals or upvalues.
+    private void namedVariable(String name) {
+        int slot = resolveLocal(name);
+        if (slot != -1) {
+            emitOp(OpCode.GET_LOCAL, slot);
+        } else {
+            emitOp(OpCode.GET_UPVALUE, resolveUpvalue(name));
+        }
+    }
+
+    private void defineVariable(Token name) {
+        if (scopeDepth > 0) {
+            addLocal(name.lexeme());
+            return;
+        }
+        emitOp(OpCode.DEFINE_GLOBAL, makeConstant(name));
+    }
+
+    private void addLocal(String name)  {
+        if (locals.size() > MAX_OPERAND)    {
+            Yazz.error(line, "Too many local variables in function.");
+            return;
+        }
+        locals.add(new Local(name, scopeDepth));
+    }
+
+    private int resolveLocal(String name)   {
+        for (int i = locals.size() - 1; i >= 0; i--)    {
+            if (locals.get(i).name.equals(name))    return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(String name) {
+        if (enclosing == null)  return -1;
+
+        int local = enclosing.resolveLocal(name);
+        if (local != -1)    {
+            enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(local, true);
+        }
+
+        int upvalue = enclosing.resolveUpvalue(name);
+        if (upvalue != -1)  {
+            return addUpvalue(upvalue, false);
+        }
+        return -1;
+    }
+
+    private int addUpvalue(int index, boolean isLocal)  {
+        for (int i = 0; i < upvalues.size(); i++)   {
+            Upvalue upvalue = upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal)   return i;
+        }
+        upvalues.add(new Upvalue(index, isLocal));
+        return upvalues.size() - 1;
+    }
+
+    private void beginScope()   {
+        scopeDepth++;
+    }
+
+    private void endScope() {
+        scopeDepth--;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > scopeDepth)  {
+            if (locals.get(locals.size() - 1).isCaptured)   {
+                emitOp(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitOp(OpCode.POP);
+            }
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private int makeConstant(Object value)  {
+        int index = function.chunk.addConstant(value);
+        if (index > MAX_OPERAND)    {
+            Yazz.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private void emitReturn()   {
+        if (type == FunctionType.INITIALIZER)   {
+            emitOp(OpCode.GET_LOCAL, 0);
+        } else {
+            emitOp(OpCode.NIL);
+        }
+        emitOp(OpCode.RETURN);
+    }
+
+    private int emitJump(byte op)   {
+        emitOp(op);
+        emitShort(MAX_OPERAND);
+        return function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset)  {
+        int jump = function.chunk.count - offset - 2;
+        if (jump > MAX_OPERAND) {
+            Yazz.error(line, "Too much code to jump over.");
+        }
+        function.chunk.code[offset] = (byte)((jump >> 8) & 0xff);
+        function.chunk.code[offset + 1] = (byte)(jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart)    {
+        emitOp(OpCode.LOOP);
+        int offset = function.chunk.count - loopStart + 2;
+        if (offset > MAX_OPERAND)   {
+            Yazz.error(line, "Loop body too large.");
+        }
+        emitShort(offset);
+    }
+
+    private void emitOp(byte op)    {
+        emitByte(op);
+    }
+
+    private void emitOp(byte op, int operand)   {
+        emitByte(op);
+        emitShort(operand);
+    }
+
+    private void emitShort(int value)   {
+        emitByte((byte)((value >> 8) & 0xff));
+        emitByte((byte)(value & 0xff));
+    }
+
+    private void emitByte(byte b)   {
+        function.chunk.write(b, line);
+    }
+}
@@ -0,0 +1,19 @@
+package com.craftinginterpreters.lox;
+
+// A compile error as the language server collects it: the line, counting
+// from 1 as token lines do, and where the token it is about starts in the
+// text that was scanned. An offset of -1 means the error is about the
+// whole line, which is all the scanner can say.
+class Diagnostic    {
+    final int line;
+    final int offset;
+    final int length;
+    final String message;
+
+    Diagnostic(int line, int offset, int length, String message)    {
+        this.line = line;
+        this.offset = offset;
+        this.length = length;
+        this.message = message;
+    }
+}
@@ -0,0 +1,242 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The language server's copy of an open file, kept parsed as it is edited.
+// The text is split into its top-level declarations, each running from its
+// first token to the next one's, so between them they cover all of it.
+// Nothing at the top level carries over from one declaration to the next
+// and the parser looks only one token ahead, so an edit can only change
+// the declaration it falls in, the one before it (whose end was decided by
+// the token after it) and whatever the new text runs on into. Those are
+// scanned, parsed and resolved again, starting from the declaration before
+// the edit, until one ends where an unchanged old one starts, on a line
+// after the edit. The old ones from there on are moved rather than parsed.
+class Document  {
+    private static class Declaration    {
+        // Where it starts, and the line that is on, counting from 0.
+        int start;
+        int startLine;
+        // Its errors give lines counting from 1 at the start of the stretch
+        // it was parsed in, which began on this line, and offsets into the
+        // text as it was then, when the declaration started at parsedAt.
+        int lineBase;
+        final int parsedAt;
+        final List<Diagnostic> diagnostics;
+        // Whether the parser is still recovering from a syntax error once
+        // past it.
+        final boolean recovering;
+
+        Declaration(int start, int startLine, int lineBase, List<Diagnostic> diagnostics, boolean recovering)  {
+            this.start = start;
+            this.startLine = startLine;
+            this.lineBase = lineBase;
+            this.parsedAt = start;
+            this.diagnostics = diagnostics;
+            this.recovering = recovering;
+        }
+    }
+
+    private char[] text;
+    private final List<Declaration> declarations = new ArrayList<>();
+
+    Document(String text)   {
+        replace(text);
+    }
+
+    void replace(String text)   {
+        this.text = text.toCharArray();
+        declarations.clear();
+        reparse(0, 0, 0, 0, 0);
+    }
+
+    // Replaces the text between two positions given as LSP gives them:
+    // lines from 0, and characters in UTF-16 units, which is what a Java
+    // char is.
+    void edit(int startLine, int startCharacter, int endLine, int endCharacter, String replacement)  {
+        int from = offset(startLine, startCharacter);
+        int to = Math.max(from, offset(endLine, endCharacter));
+        int removedLines = newlines(text, from, to);
+        int addedLines = 0;
+        for (int i = 0; i < replacement.length(); i++)  {
+            if (replacement.charAt(i) == '\n')  addedLines++;
+        }
+
+        char[] edited = new char[text.length - (to - from) + replacement.length()];
+        System.arraycopy(text, 0, edited, 0, from);
+        replacement.getChars(0, replacement.length(), edited, from);
+        System.arraycopy(text, to, edited, from + replacement.length(), text.length - to);
+        int fromLine = line(from);
+        text = edited;
+
+        int first = Math.max(0, containing(from) - 1);
+        reparse(first, replacement.length() - (to - from), addedLines - removedLines,
+                from + replacement.length(), fromLine + addedLines);
+    }
+
+    // Errors with lines counting from 0 and offsets into the text as it
+    // is now.
+    List<Diagnostic> diagnostics()  {
+        List<Diagnostic> all = new ArrayList<>();
+        for (Declaration declaration : declarations)    {
+            for (Diagnostic diagnostic : declaration.diagnostics)   {
+                if (diagnostic.offset < 0)  {
+                    all.add(new Diagnostic(declaration.lineBase + diagnostic.line - 1, -1, 0, diagnostic.message));
+                    continue;
+                }
+                // A token's line is the one it ends on. Its start is wanted.
+                int offset = diagnostic.offset - declaration.parsedAt + declaration.start;
+                all.add(new Diagnostic(line(offset), offset, diagnostic.length, diagnostic.message));
+            }
+        }
+        return all;
+    }
+
+    // Characters from the start of the offset's line to it.
+    int column(int offset)  {
+        int column = 0;
+        while (offset - column > 0 && text[offset - column - 1] != '\n') {
+            column++;
+        }
+        return column;
+    }
+
+    // Parses from the start of declaration "first" until a new declaration
+    // ends at or after editEnd, on a later line than editEndLine, exactly
+    // where an old one starts once it has moved delta characters, with
+    // the parser recovering or not as it was then. That one and those
+    // after it are kept, moved down lineDelta lines.
+    //
+    // After a syntax error the parser skips to what looks like the next
+    // statement, which may be in the middle of the broken declaration,
+    // and the pieces it parses from there aren't declarations at all. A
+    // script with a syntax error is never resolved, but here that would
+    // leave a file being typed with no other errors, so resolving starts
+    // again at the next class, function or import.
+    private void reparse(int first, int delta, int lineDelta, int editEnd, int editEndLine)    {
+        int start = first < declarations.size() ? declarations.get(first).start : 0;
+        int startLine = first < declarations.size() ? declarations.get(first).startLine : 0;
+        int lineBase = startLine;
+        boolean recovering = first > 0 && declarations.get(first - 1).recovering;
+
+        List<Declaration> parsed = new ArrayList<>();
+        List<Diagnostic> errors = new ArrayList<>();
+        Yazz.diagnostics.set(errors);
+        try {
+            Parser parser = new Parser(new Scanner(text, start, text.length));
+            int old = first + 1;
+            while (!parser.isAtEnd())   {
+                if (recovering && startsDeclaration(parser.upcoming().type))    recovering = false;
+                Stmt statement = parser.next();
+                // As when running, a declaration with syntax errors isn't
+                // resolved. The parser may have left holes in it.
+                if (!errors.isEmpty())  {
+                    recovering = true;
+                } else if (!recovering) {
+                    new Resolver().resolve(Collections.singletonList(statement));
+                }
+                parsed.add(new Declaration(start, startLine, lineBase, errors, recovering));
+                errors = new ArrayList<>();
+                Yazz.diagnostics.set(errors);
+
+                // Not from the token's line, which for a string is the last.
+                int next = parser.upcoming().offset();
+                startLine += newlines(text, start, next);
+                start = next;
+                if (start < editEnd || startLine <= editEndLine)    continue;
+                while (old < declarations.size() && declarations.get(old).start + delta < start) {
+                    old++;
+                }
+                if (old < declarations.size() && declarations.get(old).start + delta == start
+                        && declarations.get(old - 1).recovering == recovering)  {
+                    splice(first, old, parsed, delta, lineDelta);
+                    return;
+                }
+            }
+            // Errors in text with no declarations at all.
+            if (parsed.isEmpty() && !errors.isEmpty())  {
+                parsed.add(new Declaration(start, startLine, lineBase, errors, true));
+            }
+            splice(first, declarations.size(), parsed, delta, lineDelta);
+        } finally   {
+            Yazz.diagnostics.remove();
+        }
+    }
+
+    private static boolean startsDeclaration(TokenType type)    {
+        return type == TokenType.CLASS || type == TokenType.FUN || type == TokenType.IMPORT;
+    }
+
+    private void splice(int from, int to, List<Declaration> parsed, int delta, int lineDelta)  {
+        for (Declaration declaration : declarations.subList(to, declarations.size()))  {
+            declaration.start += delta;
+            declaration.startLine += lineDelta;
+            declaration.lineBase += lineDelta;
+        }
+        declarations.subList(from, to).clear();
+        declarations.addAll(from, parsed);
+    }
+
+    // The last declaration starting at or before the offset, or 0.
+    private int containing(int offset)  {
+        int low = 0;
+        int high = declarations.size() - 1;
+        int found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (declarations.get(middle).start <= offset)   {
+                found = middle;
+                low = middle + 1;
+            } else  {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    // Walks from the last declaration that starts on an earlier line, so
+    // only the lines in between are counted. A position past the end of
+    // its line or of the text is taken as that end.
+    private int offset(int line, int character) {
+        int low = 0;
+        int high = declarations.size() - 1;
+        int offset = 0;
+        int current = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Declaration declaration = declarations.get(middle);
+            if (declaration.startLine <= line)  {
+                offset = declaration.start;
+                current = declaration.startLine;
+                low = middle + 1;
+            } else  {
+                high = middle - 1;
+            }
+        }
+        while (offset > 0 && text[offset - 1] != '\n')  offset--;
+        while (current < line && offset < text.length)  {
+            if (text[offset++] == '\n') current++;
+        }
+        for (int i = 0; i < character && offset < text.length && text[offset] != '\n'; i++)    {
+            offset++;
+        }
+        return offset;
+    }
+
+    // The line the offset is on, counting from 0.
+    int line(int offset)    {
+        Declaration declaration = declarations.isEmpty() ? null : declarations.get(containing(offset));
+        if (declaration == null || declaration.start > offset)  return newlines(text, 0, offset);
+        return declaration.startLine + newlines(text, declaration.start, offset);
+    }
+
+    private static int newlines(char[] text, int from, int to)  {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text[i] == '\n')    count++;
+        }
+        return count;
+    }
+}
@@ -1,51 +1,109 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 class Environment {
+    private static final int INITIAL_SLOTS = 8;
+    // Fills the global slots of names not defined yet, since nil is a value.
+    private static final Object UNDEFINED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Only the global environment looks variables up by name, through the
+    // index of its symbol. Local scopes keep their variables in the slots
+    // the Resolver assigned, in declaration order.
+    private final boolean global;
+    private Object[] slots;
+    private int count = 0;
 
     Environment() {
         enclosing = null;
+        global = true;
+        slots = new Object[INITIAL_SLOTS];
+        Arrays.fill(slots, UNDEFINED);
     }
     Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        this.global = false;
+        this.slots = new Object[INITIAL_SLOTS];
+        if (Allocations.tracking)   Allocations.environment(INITIAL_SLOTS);
+        if (YazzEvents.recording()) YazzEvents.Environment.allocated();
     }
 
     Object get(Token name)  {
-        if (values.containsKey(name.lexeme))    {
-            return values.get(name.lexeme);
+        int index = name.symbol().index;
+        if (index < slots.length && slots[index] != UNDEFINED)  {
+            return slots[index];
         }
-        if (enclosing != null) return enclosing.get(name);
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
     }
 
     void assign(Token name, Object value)   {
-        if (values.containsKey(name.lexeme))    {
-            values.put(name.lexeme, value);
+        int index = name.symbol().index;
+        if (index < slots.length && slots[index] != UNDEFINED)  {
+            slots[index] = value;
             return;
         }
-        if (enclosing != null)  {
-            enclosing.assign(name, value);
+
+        throw new RuntimeError(name,"Undefined variable '" + name.lexeme() + "'.");
+    }
+
+    void define(Token name, Object value)   {
+        if (global) {
+            define(name.symbol(), value);
             return;
         }
-
-        throw new RuntimeError(name,"Undefined variable '" + name.lexeme + "'.");
+        define(value);
     }
 
     void define(String name, Object value)  {
-        values.put(name, value);
+        if (global) {
+            define(Symbol.intern(name), value);
+            return;
+        }
+        define(value);
+    }
+
+    private void define(Symbol symbol, Object value)    {
+        if (symbol.index >= slots.length)   {
+            int length = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(length * 2, symbol.index + 1));
+            Arrays.fill(slots, length, slots.length, UNDEFINED);
+        }
+        slots[symbol.index] = value;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    // Fills the next slot of a local scope.
+    void define(Object value)   {
+        if (count == slots.length)  {
+            slots = Arrays.copyOf(slots, count * 2);
+            if (Allocations.tracking)   Allocations.slots(slots.length);
+        }
+        slots[count++] = value;
+    }
+
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
+    }
+
+    void assignAt(int distance, int slot, Object value)   {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    // What a snapshot saves: the globals by name, in the order their names
+    // were first seen, or how many slots of a local scope are in use.
+    Map<String, Object> globalValues()  {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < slots.length; i++)  {
+            if (slots[i] != UNDEFINED)  values.put(Symbol.at(i).name, slots[i]);
+        }
+        return values;
     }
 
-    void assignAt(int distance, Token name, Object value)   {
-        ancestor(distance).values.put(name.lexeme, value);
+    int slotCount() {
+        return count;
     }
 
     Environment ancestor(int distance)  {
@@ -55,4 +113,4 @@ class Environment {
         }
         return environment;
     }
-}
\ No newline at end of file
+}
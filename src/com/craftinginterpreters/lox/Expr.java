@@ -30,6 +30,8 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    int depth = -1;
+    int slot;
     }
     static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -46,6 +48,7 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    BinaryOp op = BinaryOp.UNINITIALIZED;
     }
     static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -62,6 +65,7 @@ abstract class Expr {
     final Expr callee;
     final Token paren;
     final List<Expr> arguments;
+    boolean tailCall;
     }
     static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -76,6 +80,7 @@ abstract class Expr {
 
     final Expr object;
     final Token name;
+    final InlineCache cache = new InlineCache();
     }
     static class Grouping extends Expr {
     Grouping(Expr expression) {
@@ -132,6 +137,7 @@ abstract class Expr {
     final Expr object;
     final Token name;
     final Expr value;
+    final InlineCache cache = new InlineCache();
     }
     static class Super extends Expr {
     Super(Token keyword, Token method) {
@@ -146,6 +152,8 @@ abstract class Expr {
 
     final Token keyword;
     final Token method;
+    int depth = -1;
+    int slot;
     }
     static class This extends Expr {
     This(Token keyword) {
@@ -158,6 +166,8 @@ abstract class Expr {
     }
 
     final Token keyword;
+    int depth = -1;
+    int slot;
     }
     static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -184,6 +194,8 @@ abstract class Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+// Remembers, for the last few shapes seen at one Expr.Get or Expr.Set, where
+// the property lives so repeated accesses skip the name lookup. A site that
+// sees more shapes than fit is megamorphic and always does the lookup.
+class InlineCache {
+    private static final int ENTRIES = 4;
+
+    private Shape[] shapes;
+    private Shape[] targets;
+    private int[] indices;
+    private int count = 0;
+
+    // Index of the property in instances of this shape, or -1 if they don't
+    // have it.
+    int load(Shape shape, String name)  {
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) return indices[i];
+        }
+
+        int index = shape.indexOf(name);
+        remember(shape, shape, index);
+        return index;
+    }
+
+    void store(YazzInstance instance, String name, Object value)    {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                instance.put(targets[i], indices[i], value);
+                return;
+            }
+        }
+
+        int index = shape.indexOf(name);
+        Shape target = shape;
+        if (index < 0)  {
+            target = shape.with(name);
+            index = shape.size;
+        }
+        remember(shape, target, index);
+        instance.put(target, index, value);
+    }
+
+    private void remember(Shape shape, Shape target, int index) {
+        if (shapes == null) {
+            shapes = new Shape[ENTRIES];
+            targets = new Shape[ENTRIES];
+            indices = new int[ENTRIES];
+        }
+        if (count == ENTRIES)   return;
+
+        shapes[count] = shape;
+        targets[count] = target;
+        indices[count] = index;
+        count++;
+    }
+}
@@ -7,7 +7,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
@@ -16,18 +15,25 @@ import java.util.List;
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
     final Environment globals = new Environment();
+    final ModuleLoader modules = new ModuleLoader();
     private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    private final TailCall tailCall = new TailCall();
+    // The function whose body is running, for counting loop iterations.
+    private Stmt.Function function;
+    // Set by --profile; the interpreter keeps its shadow stack up to date.
+    Profiler profiler;
+    // Limits how long a script may run; null means no limit.
+    Budget budget;
 
     Interpreter()   {
-        globals.define("clock", new YazzCallable() {
+        defineNative("clock", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+            public Object call0(Interpreter interpreter, Token token) {
                 return (double)System.currentTimeMillis() / 1000.0;
             }
 
@@ -37,14 +43,14 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("input", new YazzCallable() {
+        defineNative("input", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 0;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+            public Object call0(Interpreter interpreter, Token token) {
                 try {
                     BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
                     return reader.readLine();
@@ -60,16 +66,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
         });
 
-        globals.define("readFile", new YazzCallable() {
+        defineNative("readFile", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 1;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+            public Object call1(Interpreter interpreter, Object file, Token token) {
                 try {
-                    String path = arguments.get(0).toString();
+                    String path = file.toString();
                     String contents = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
                     return contents;
                 } catch (IOException e) {
@@ -83,17 +89,17 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("writeFile", new YazzCallable() {
+        defineNative("writeFile", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 2;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+            public Object call2(Interpreter interpreter, Object file, Object text, Token token) {
                 try {
-                    String path = arguments.get(0).toString();
-                    String contents = arguments.get(1).toString();
+                    String path = file.toString();
+                    String contents = text.toString();
                     Files.write(Paths.get(path), contents.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE);
                     return null;
                 } catch (IOException e) {
@@ -107,17 +113,17 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("appendFile", new YazzCallable() {
+        defineNative("appendFile", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 2;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+            public Object call2(Interpreter interpreter, Object file, Object text, Token token) {
                 try {
-                    String path = arguments.get(0).toString();
-                    String content = arguments.get(1).toString();
+                    String path = file.toString();
+                    String content = text.toString();
                     Files.write(Paths.get(path), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
                     return null;
                 } catch (IOException e) {
@@ -130,16 +136,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
                 return "<native fn>";
             }
         });
-        globals.define("cap", new YazzCallable() {
+        defineNative("cap", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 1;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (arguments.get(0) instanceof String) {
-                    String original = (String) arguments.get(0);
+            public Object call1(Interpreter interpreter, Object argument, Token token) {
+                if (argument instanceof String) {
+                    String original = (String) argument;
                     return original.toUpperCase();
                 } else {
                     throw new RuntimeError(token, "Argument must be a string.");
@@ -152,16 +158,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("uncap", new YazzCallable() {
+        defineNative("uncap", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 1;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (arguments.get(0) instanceof String) {
-                    String original = (String) arguments.get(0);
+            public Object call1(Interpreter interpreter, Object argument, Token token) {
+                if (argument instanceof String) {
+                    String original = (String) argument;
                     return original.toLowerCase();
                 } else {
                     throw new RuntimeError(token, "Argument must be a string.");
@@ -174,16 +180,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("countChars", new YazzCallable() {
+        defineNative("countChars", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 1;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (arguments.get(0) instanceof String) {
-                    String string = arguments.get(0).toString();
+            public Object call1(Interpreter interpreter, Object argument, Token token) {
+                if (argument instanceof String) {
+                    String string = argument.toString();
                     return (double) string.length();
                 } else {
                     throw new RuntimeError(token, "Argument must be a string.");
@@ -196,27 +202,27 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("editChar", new YazzCallable() {
+        defineNative("editChar", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 3;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof String)) {
+            public Object call3(Interpreter interpreter, Object string, Object index, Object character, Token token) {
+                if (!(string instanceof String)) {
                     throw new RuntimeError(token, "First argument must be a string.");
                 }
-                if (!(arguments.get(1) instanceof Double)) {
+                if (!(index instanceof Double)) {
                     throw new RuntimeError(token, "Second argument must be a number.");
                 }
-                if (!(arguments.get(2) instanceof String)) {
+                if (!(character instanceof String)) {
                     throw new RuntimeError(token, "Third argument must be a string.");
                 }
 
-                String originalString = (String) arguments.get(0);
-                int position = ((Double) arguments.get(1)).intValue() - 1;
-                String newCharacter = (String) arguments.get(2);
+                String originalString = (String) string;
+                int position = ((Double) index).intValue() - 1;
+                String newCharacter = (String) character;
 
                 if (position < 0 || position >= originalString.length()) {
                     throw new RuntimeError(token, "Position out of bounds.");
@@ -232,16 +238,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("sqrt", new YazzCallable() {
+        defineNative("sqrt", new NativeFunction.Body() {
             @Override
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double)) {
+            public Object call1(Interpreter interpreter, Object argument, Token token) {
+                if (!(argument instanceof Double)) {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                Double number = (Double) arguments.get(0);
+                Double number = (Double) argument;
                 if (number < 0) {
                     throw new RuntimeError(token, "Argument must be non-negative.");
                 }
@@ -254,22 +260,22 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("pow", new YazzCallable() {
+        defineNative("pow", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 2;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double))  {
+            public Object call2(Interpreter interpreter, Object base, Object exponent, Token token) {
+                if (!(base instanceof Double))  {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                if (!(arguments.get(1) instanceof Double))  {
+                if (!(exponent instanceof Double))  {
                     throw new RuntimeError(token, "The power must be a number.");
                 }
-                Double number = (Double) arguments.get(0);
-                Double power = (Double) arguments.get(1);
+                Double number = (Double) base;
+                Double power = (Double) exponent;
                 return Math.pow(number, power);
             }
 
@@ -279,16 +285,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("sin", new YazzCallable() {
+        defineNative("sin", new NativeFunction.Body() {
             @Override
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double)) {
+            public Object call1(Interpreter interpreter, Object degrees, Token token) {
+                if (!(degrees instanceof Double)) {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                return Math.round(Math.sin(Math.toRadians((Double) arguments.get(0))) * 10000) / 10000.0;
+                return Math.round(Math.sin(Math.toRadians((Double) degrees)) * 10000) / 10000.0;
             }
 
             @Override
@@ -297,16 +303,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         });
 
-        globals.define("cos", new YazzCallable() {
+        defineNative("cos", new NativeFunction.Body() {
             @Override
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double)) {
+            public Object call1(Interpreter interpreter, Object degrees, Token token) {
+                if (!(degrees instanceof Double)) {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                return Math.round(Math.cos(Math.toRadians((Double) arguments.get(0))) * 10000) / 10000.0;
+                return Math.round(Math.cos(Math.toRadians((Double) degrees)) * 10000) / 10000.0;
             }
 
             @Override
@@ -316,16 +322,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
         });
 
-        globals.define("tan", new YazzCallable() {
+        defineNative("tan", new NativeFunction.Body() {
             @Override
             public int arity() { return 1; }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double)) {
+            public Object call1(Interpreter interpreter, Object degrees, Token token) {
+                if (!(degrees instanceof Double)) {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                double angle = Math.toRadians((Double) arguments.get(0));
+                double angle = Math.toRadians((Double) degrees);
                 // Check for the angle where tan is undefined
                 if (Math.abs(Math.cos(angle)) < 1E-9) {
                     throw new RuntimeError(token, "Tangent is undefined for this angle.");
@@ -340,19 +346,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
         });
 
-        globals.define("round", new YazzCallable() {
+        defineNative("round", new NativeFunction.Body() {
             @Override
             public int arity() {
                 return 2;
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-                if (!(arguments.get(0) instanceof Double) || !(arguments.get(1) instanceof Double)) {
+            public Object call2(Interpreter interpreter, Object value, Object digits, Token token) {
+                if (!(value instanceof Double) || !(digits instanceof Double)) {
                     throw new RuntimeError(token, "Argument must be a number.");
                 }
-                double number = (Double) arguments.get(0);
-                int places = ((Double) arguments.get(1)).intValue();
+                double number = (Double) value;
+                int places = ((Double) digits).intValue();
                 double scale = Math.pow(10, places);
                 return Math.round(number * scale) / scale;
             }
@@ -366,6 +372,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
     }
 
+    private void defineNative(String name, NativeFunction.Body body)   {
+        globals.define(name, new NativeFunction(name, body));
+    }
+
     void interpret(List<Stmt> statements) {
         try {
             for (Stmt statement : statements)   {
@@ -402,27 +412,28 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
         }
 
         Object value = evaluate(expr.value);
-        ((YazzInstance)object).set(expr.name, value);
+        if (profiler != null)   profiler.line(expr.name.line);
+        ((YazzInstance)object).set(expr.name, value, expr.cache);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr)   {
-        int distance = locals.get(expr);
-        YazzClass superclass = (YazzClass)environment.getAt(distance, "super");
+        int distance = expr.depth;
+        YazzClass superclass = (YazzClass)environment.getAt(distance, 0);
 
-        YazzInstance object = (YazzInstance)environment.getAt(distance - 1, "this");
+        YazzInstance object = (YazzInstance)environment.getAt(distance - 1, 0);
 
-        YazzFunction method = superclass.findMethod(expr.method.lexeme);
+        YazzFunction method = superclass.findMethod(expr.method.lexeme());
         if (method == null) {
-            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme() + "'.");
         }
         return method.bind(object);
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return environment.getAt(expr.depth, expr.slot);
     }
 
     @Override
@@ -434,7 +445,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
                 return !isTruthy(right);
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -(double)right;
+                Object negated = -(double)right;
+                if (Allocations.tracking)   Allocations.value(negated);
+                return negated;
         }
 
         // Unreachable
@@ -444,15 +457,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
-    }
-
-    public Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null)   {
-            return environment.getAt(distance, name.lexeme);
+        if (expr.depth >= 0)    {
+            return environment.getAt(expr.depth, expr.slot);
         } else {
-            return globals.get(name);
+            return globals.get(expr.name);
         }
     }
 
@@ -461,26 +469,26 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right)    {
+    static void checkNumberOperands(Token operator, Object left, Object right)    {
         if (left instanceof Double && right instanceof Double)  return;
 
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean)  return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null)  return false;
 
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double)   {
@@ -506,10 +514,6 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
         stmt.accept(this);
     }
 
-    void resolve(Expr expr, int depth)  {
-        locals.put(expr, depth);
-    }
-
     void executeBlock(List<Stmt> statements, Environment environment)    {
         Environment previous = this.environment;
         try {
@@ -523,6 +527,56 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
         }
     }
 
+    // Runs a function body in its frame and returns what it returned, using
+    // the compiled code once the function is hot. A tail call out of the
+    // body replaces the function and frame and goes around again, so a
+    // chain of them runs in this one Java frame.
+    Object executeBody(YazzFunction callee, Environment frame)  {
+        Environment previous = this.environment;
+        Stmt.Function caller = this.function;
+        if (profiler != null)   profiler.enter(callee.declaration());
+        YazzEvents.Call event = YazzEvents.recording() ? YazzEvents.Call.start() : null;
+        Stmt.Function declaration = callee.declaration();
+        try {
+            while (true)    {
+                declaration = callee.declaration();
+                this.environment = frame;
+                this.function = declaration;
+                try {
+                    JitCode code = JitCompiler.code(declaration);
+                    if (code != null)   return code.run(this, frame);
+
+                    for (Stmt statement : declaration.body) {
+                        execute(statement);
+                    }
+                    return null;
+                } catch (Return returnValue)    {
+                    return returnValue.value;
+                } catch (TailCall call) {
+                    // Each function run in place of another gets its own event.
+                    if (event != null)  {
+                        event.end(declaration);
+                        event = YazzEvents.Call.start();
+                    }
+                    callee = call.function;
+                    frame = call.frame;
+                    if (profiler != null)   profiler.replace(callee.declaration());
+                }
+            }
+        } finally   {
+            this.environment = previous;
+            this.function = caller;
+            if (profiler != null)   profiler.exit();
+            if (event != null)  event.end(declaration);
+        }
+    }
+
+    TailCall tailCall(YazzFunction function, Environment frame)   {
+        tailCall.function = function;
+        tailCall.frame = frame;
+        return tailCall;
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
         executeBlock(stmt.statements, new Environment(environment));
@@ -539,8 +593,6 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
-
         if (stmt.superclass != null)    {
             environment = new Environment(environment);
             environment.define("super", superclass);
@@ -548,14 +600,16 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
         Map<String, YazzFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods)   {
-            YazzFunction function = new YazzFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            YazzFunction function = new YazzFunction(method, environment, method.name.lexeme().equals("init"));
+            methods.put(method.name.lexeme(), function);
         }
-        YazzClass klass = new YazzClass(stmt.name.lexeme, (YazzClass)superclass, methods);
+        YazzClass klass = new YazzClass(stmt.name.lexeme(), (YazzClass)superclass, methods);
         if (superclass != null) {
             environment = environment.enclosing;
         }
-        environment.assign(stmt.name, klass);
+        // Methods only capture the environment, so the class can take its
+        // slot once it exists without breaking references to its own name.
+        environment.define(stmt.name, klass);
         return null;
     }
 
@@ -568,7 +622,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt)   {
         YazzFunction function = new YazzFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
+        environment.define(stmt.name, function);
         return null;
     }
 
@@ -584,6 +638,19 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
 
 
 
+    // Imports are only allowed at the top level, so the module's statements
+    // run in the global scope like the script's own.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt)   {
+        YazzModule module = stmt.module;
+        if (module.evaluated)   return null;
+        module.evaluated = true;
+        for (Stmt statement : module.statements)    {
+            execute(statement);
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
@@ -595,6 +662,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt)   {
         Object value = null;
+        if (profiler != null)   profiler.line(stmt.keyword.line);
         if (stmt.value != null) value = evaluate(stmt.value);
 
         throw new Return(value);
@@ -606,7 +674,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
+        if (profiler != null)   profiler.line(stmt.name.line);
+        environment.define(stmt.name, value);
         return null;
     }
 
@@ -614,6 +683,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
     public Void visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition)))  {
             execute(stmt.body);
+            if (budget != null) budget.spend(stmt.keyword);
+            if (function != null)   function.backEdges++;
         }
         return null;
     }
@@ -622,9 +693,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null)   {
-            environment.assignAt(distance, expr.name, value);
+        if (profiler != null)   profiler.line(expr.name.line);
+        if (expr.depth >= 0)    {
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             globals.assign(expr.name, value);
         }
@@ -636,71 +707,139 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>   {
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        if (profiler != null)   profiler.line(expr.operator.line);
+        Object result = expr.op.apply(expr, left, right);
+        if (Allocations.tracking)   Allocations.value(result);
+        return result;
+    }
 
-        switch  (expr.operator.type)    {
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left > (double)right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left >= (double)right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left < (double)right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left <= (double)right;
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left - (double)right;
-            case PLUS:
-                if (left instanceof Double && right instanceof Double)  {
-                    return (double)left + (double)right;
-                }
-                if (left instanceof String && right instanceof String)  {
-                    return (String)left + (String)right;
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        if (profiler != null)   profiler.line(expr.paren.line);
+        if (budget != null) budget.spend(expr.paren);
+        Object callee;
+        if (expr.callee instanceof Expr.Get)    {
+            // obj.method(...) runs the method with obj as "this" directly
+            // instead of binding it first. Fields still win over methods.
+            Expr.Get get = (Expr.Get)expr.callee;
+            Object object = evaluate(get.object);
+            if (!(object instanceof YazzInstance))  {
+                throw new RuntimeError(get.name, "Only instances have properties");
+            }
+
+            YazzInstance instance = (YazzInstance)object;
+            int index = get.cache.load(instance.shape, get.name.lexeme());
+            if (index < 0)  return invokeMethod(expr, get, instance);
+            callee = instance.field(index);
+        } else if (expr.callee instanceof Expr.Super)   {
+            return invokeSuper(expr, (Expr.Super)expr.callee);
+        } else  {
+            callee = evaluate(expr.callee);
+        }
+
+        if (expr.tailCall && callee instanceof YazzFunction && ((YazzFunction)callee).canTailCall()) {
+            YazzFunction function = (YazzFunction)callee;
+            throw tailCall(function, frame(function, function.newFrame(), expr));
+        }
+
+        // Calls with up to four arguments keep them in locals and use the
+        // matching fixed-arity entry point; only longer ones build an array.
+        List<Expr> arguments = expr.arguments;
+        Token paren = expr.paren;
+        switch (arguments.size())   {
+            case 0:
+                return callable(callee, expr).call0(this, paren);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                return callable(callee, expr).call1(this, a, paren);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return callable(callee, expr).call2(this, a, b, paren);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return callable(callee, expr).call3(this, a, b, c, paren);
+            }
+            case 4: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                Object d = evaluate(arguments.get(3));
+                return callable(callee, expr).call4(this, a, b, c, d, paren);
+            }
+            default: {
+                Object[] values = new Object[arguments.size()];
+                if (Allocations.tracking)   Allocations.arguments(values.length);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = evaluate(arguments.get(i));
                 }
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
-            case BANG_EQUAL:
-                return !isEqual(left, right);
-            case EQUAL_EQUAL:
-                return isEqual(left, right);
+                return callable(callee, expr).call(this, values, paren);
+            }
         }
+    }
 
-        // Unreachable
-        return null;
+    private Object invokeMethod(Expr.Call expr, Expr.Get get, YazzInstance instance)   {
+        YazzFunction method = instance.klass.findMethod(get.name.lexeme());
+        if (method == null) {
+            throw new RuntimeError(get.name, "Undefined property '" + get.name.lexeme() + "'.");
+        }
+        Environment frame = frame(method, method.newFrame(instance), expr);
+        if (expr.tailCall && method.canTailCall())  throw tailCall(method, frame);
+        return method.execute(this, frame);
     }
 
-    @Override
-    public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+    private Object invokeSuper(Expr.Call expr, Expr.Super sup) {
+        YazzClass superclass = (YazzClass)environment.getAt(sup.depth, 0);
+        YazzInstance object = (YazzInstance)environment.getAt(sup.depth - 1, 0);
+
+        YazzFunction method = superclass.findMethod(sup.method.lexeme());
+        if (method == null) {
+            throw new RuntimeError(sup.method, "Undefined property '" + sup.method.lexeme() + "'.");
+        }
+        Environment frame = frame(method, method.newFrame(object), expr);
+        if (expr.tailCall && method.canTailCall())  throw tailCall(method, frame);
+        return method.execute(this, frame);
+    }
+
+    // Evaluates the arguments straight into the function's new frame.
+    private Environment frame(YazzFunction function, Environment frame, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        if (arguments.size() != function.arity())   {
+            for (Expr argument : arguments) {
+                evaluate(argument);
+            }
+            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+        }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments)    {
-            arguments.add(evaluate(argument));
+        for (int i = 0; i < arguments.size(); i++)  {
+            frame.define(evaluate(arguments.get(i)));
         }
+        return frame;
+    }
+
+    // Checked after the arguments have been evaluated.
+    static YazzCallable callable(Object callee, Expr.Call expr)    {
         if (!(callee instanceof YazzCallable))  {
             throw new RuntimeError(expr.paren, "Can only call functions and classes");
         }
 
         YazzCallable function = (YazzCallable)callee;
-        if (arguments.size() != function.arity())   {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+        if (expr.arguments.size() != function.arity())  {
+            throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got " + expr.arguments.size() + ".");
         }
-        return function.call(this, arguments, expr.paren); // Added null here due to line number
+        return function;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr)   {
         Object object = evaluate(expr.object);
+        if (profiler != null)   profiler.line(expr.name.line);
         if (object instanceof YazzInstance) {
-            return ((YazzInstance) object).get(expr.name);
+            return ((YazzInstance) object).get(expr.name, expr.cache);
         }
         throw new RuntimeError(expr.name, "Only instances have properties");
     }
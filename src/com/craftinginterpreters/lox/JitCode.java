@@ -0,0 +1,7 @@
+package com.craftinginterpreters.lox;
+
+// A function body compiled to JVM bytecode by the JitCompiler. It runs in
+// the frame the function was called with, just like the interpreted body.
+interface JitCode {
+    Object run(Interpreter interpreter, Environment frame);
+}
@@ -0,0 +1,508 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.ClassFileWriter.*;
+
+// Compiles the body of a hot function to a JVM class implementing JitCode
+// and loads it as a hidden class, so HotSpot can inline and optimize it like
+// any other Java code. Since nested functions and classes are not compiled,
+// nothing can capture the compiled function's own scopes, and its locals
+// live in JVM locals instead of environments. Variables from enclosing
+// functions are still read through the frame's closure. Anything a compiled
+// function can't handle statically means it stays interpreted; everything
+// it handles dynamically goes through JitRuntime, which behaves exactly like
+// the interpreter.
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
+    static boolean enabled = true;
+    // Under --profile or --alloc-profile compiled code keeps the line up to date
+    // at the same places the interpreter does.
+    static boolean profiling = false;
+
+    // Calls before a function is compiled. Loop iterations count too, at a
+    // sixteenth of a call each, so a function that spends its time in a
+    // loop gets compiled for its next call.
+    private static final int THRESHOLD = 1000;
+    private static final int BACK_EDGE_SHIFT = 4;
+
+    private static final String PACKAGE = "com/craftinginterpreters/lox/";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String RUNTIME = PACKAGE + "JitRuntime";
+    private static final String ENVIRONMENT = PACKAGE + "Environment";
+    private static final String INTERPRETER = "L" + PACKAGE + "Interpreter;";
+    private static final String INSTANCE = "L" + PACKAGE + "YazzInstance;";
+    private static final String BINARY = PACKAGE + "Expr$Binary";
+    private static final String CALL = PACKAGE + "Expr$Call";
+    private static final String GET = PACKAGE + "Expr$Get";
+    private static final String SET = PACKAGE + "Expr$Set";
+    private static final String TOKEN = PACKAGE + "Token";
+    private static final String UNARY = PACKAGE + "Expr$Unary";
+
+    // Locals of run(); 0 is the compiled code itself.
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int FRAME_LOCAL = 2;
+
+    private static final Map<TokenType, String> OPERATORS = new HashMap<>();
+    private static final Map<TokenType, String> CONDITIONS = new HashMap<>();
+
+    static {
+        OPERATORS.put(TokenType.PLUS, "add");
+        OPERATORS.put(TokenType.MINUS, "subtract");
+        OPERATORS.put(TokenType.STAR, "multiply");
+        OPERATORS.put(TokenType.SLASH, "divide");
+        OPERATORS.put(TokenType.GREATER, "greater");
+        OPERATORS.put(TokenType.GREATER_EQUAL, "greaterEqual");
+        OPERATORS.put(TokenType.LESS, "less");
+        OPERATORS.put(TokenType.LESS_EQUAL, "lessEqual");
+        OPERATORS.put(TokenType.EQUAL_EQUAL, "equal");
+        OPERATORS.put(TokenType.BANG_EQUAL, "notEqual");
+
+        CONDITIONS.put(TokenType.GREATER, "isGreater");
+        CONDITIONS.put(TokenType.GREATER_EQUAL, "isGreaterEqual");
+        CONDITIONS.put(TokenType.LESS, "isLess");
+        CONDITIONS.put(TokenType.LESS_EQUAL, "isLessEqual");
+        CONDITIONS.put(TokenType.EQUAL_EQUAL, "isEqual");
+        CONDITIONS.put(TokenType.BANG_EQUAL, "isNotEqual");
+    }
+
+    // Counts a call of the function and returns its compiled code once it
+    // has been called often enough, or null while it runs interpreted.
+    static JitCode code(Stmt.Function declaration)  {
+        JitCode compiled = declaration.code;
+        if (compiled != null || declaration.uncompilable)   return compiled;
+        if (!enabled)   {
+            declaration.uncompilable = true;
+            return null;
+        }
+        if (++declaration.calls + (declaration.backEdges >> BACK_EDGE_SHIFT) < THRESHOLD)   return null;
+
+        try {
+            declaration.code = new JitCompiler(declaration).compile();
+        } catch (Unsupported | IllegalArgumentException | LinkageError | ReflectiveOperationException e) {
+            declaration.uncompilable = true;
+        }
+        return declaration.code;
+    }
+
+    // Thrown on reaching anything compiled code doesn't handle.
+    private static class Unsupported extends RuntimeException  {
+        Unsupported()   {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Stmt.Function function;
+    private final String className;
+    private final ClassFileWriter file = new ClassFileWriter();
+    private final ClassFileWriter.Code code = new ClassFileWriter.Code(file, 3);
+    private final List<Object> constants = new ArrayList<>();
+    // The JVM local holding each slot of each scope, innermost last. The
+    // first scope is the function's frame.
+    private final List<List<Integer>> scopes = new ArrayList<>();
+    private int nextLocal = 3;
+
+    private JitCompiler(Stmt.Function function) {
+        this.function = function;
+        this.className = PACKAGE + "YazzJit$" + function.name.lexeme();
+    }
+
+    private JitCode compile() throws ReflectiveOperationException  {
+        // Copy "this" and the parameters out of the frame.
+        List<Integer> frame = new ArrayList<>();
+        scopes.add(frame);
+        int slots = function.params.size() + (function.method ? 1 : 0);
+        for (int slot = 0; slot < slots; slot++)    {
+            code.load(FRAME_LOCAL);
+            code.push(0);
+            code.push(slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)" + OBJECT);
+            frame.add(store());
+        }
+
+        for (Stmt statement : function.body)    {
+            statement.accept(this);
+        }
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+
+        file.field(ACC_PRIVATE | ACC_FINAL, "constants", "[" + OBJECT);
+        ClassFileWriter.Code constructor = new ClassFileWriter.Code(file, 2);
+        constructor.load(0);
+        constructor.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.load(0);
+        constructor.load(1);
+        constructor.field(PUTFIELD, className, "constants", "[" + OBJECT);
+        constructor.op(RETURN, 0);
+        file.method(ACC_PUBLIC, "<init>", "([" + OBJECT + ")V", constructor);
+        file.method(ACC_PUBLIC, "run", "(" + INTERPRETER + "L" + ENVIRONMENT + ";)" + OBJECT, code);
+
+        byte[] bytes = file.toBytes(className, "java/lang/Object", PACKAGE + "JitCode");
+        Class<?> compiled = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+        return (JitCode)compiled.getConstructor(Object[].class).newInstance((Object)constants.toArray());
+    }
+
+    private int store() {
+        int local = nextLocal++;
+        code.store(local);
+        return local;
+    }
+
+    private void constant(Object value, String type)    {
+        code.load(0);
+        code.field(GETFIELD, className, "constants", "[" + OBJECT);
+        code.push(constants.size());
+        code.op(AALOAD, -1);
+        if (type != null)   code.type(CHECKCAST, type);
+        constants.add(value);
+    }
+
+    private void runtime(String name, String descriptor)    {
+        code.invoke(INVOKESTATIC, RUNTIME, name, descriptor);
+    }
+
+    private void line(Token token)  {
+        if (!profiling) return;
+        code.load(INTERPRETER_LOCAL);
+        code.push(token.line);
+        runtime("line", "(" + INTERPRETER + "I)V");
+    }
+
+    // Counts the value on top of the stack under --alloc-profile.
+    private void allocated()    {
+        if (!Allocations.tracking)  return;
+        code.op(DUP, 1);
+        runtime("allocated", "(" + OBJECT + ")V");
+    }
+
+    // Always emitted, since the budget can change between runs of code
+    // compiled in an earlier one.
+    private void spend(Token token) {
+        code.load(INTERPRETER_LOCAL);
+        constant(token, TOKEN);
+        runtime("spend", "(" + INTERPRETER + "L" + TOKEN + ";)V");
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    // Leaves the truthiness of the condition on the stack as an int.
+    // Comparisons produce it directly instead of boxing a Boolean first.
+    private void condition(Expr expr)   {
+        if (expr instanceof Expr.Binary)    {
+            Expr.Binary binary = (Expr.Binary)expr;
+            String test = CONDITIONS.get(binary.operator.type);
+            if (test != null)   {
+                compile(binary.left);
+                compile(binary.right);
+                constant(binary, BINARY);
+                runtime(test, "(" + OBJECT + OBJECT + "L" + BINARY + ";)Z");
+                return;
+            }
+        }
+        compile(expr);
+        code.invoke(INVOKESTATIC, PACKAGE + "Interpreter", "isTruthy", "(" + OBJECT + ")Z");
+    }
+
+    private void loadSlot(int depth, int slot)  {
+        int innermost = scopes.size() - 1;
+        if (depth <= innermost) {
+            code.load(local(scopes.get(innermost - depth), slot));
+            return;
+        }
+        code.load(FRAME_LOCAL);
+        code.push(depth - innermost);
+        code.push(slot);
+        code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)" + OBJECT);
+    }
+
+    private static int local(List<Integer> scope, int slot) {
+        if (slot >= scope.size())   throw new Unsupported();
+        return scope.get(slot);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.add(new ArrayList<>());
+        for (Stmt statement : stmt.statements)  {
+            statement.accept(this);
+        }
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt)   {
+        compile(stmt.expression);
+        code.op(POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt)   {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt)   {
+        ClassFileWriter.Code.Label elseBranch = code.label();
+        condition(stmt.condition);
+        code.jump(IFEQ, elseBranch);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch == null)    {
+            code.mark(elseBranch);
+            return null;
+        }
+
+        ClassFileWriter.Code.Label end = code.label();
+        code.jump(GOTO, end);
+        code.mark(elseBranch);
+        stmt.elseBranch.accept(this);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt)   {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        runtime("print", "(" + OBJECT + ")V");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt)   {
+        line(stmt.keyword);
+        if (stmt.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else  {
+            compile(stmt.value);
+        }
+        code.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null)   {
+            code.op(ACONST_NULL, 1);
+        } else  {
+            compile(stmt.initializer);
+        }
+        line(stmt.name);
+        scopes.get(scopes.size() - 1).add(store());
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        ClassFileWriter.Code.Label start = code.label();
+        ClassFileWriter.Code.Label end = code.label();
+        code.mark(start);
+        condition(stmt.condition);
+        code.jump(IFEQ, end);
+        stmt.body.accept(this);
+        spend(stmt.keyword);
+        code.jump(GOTO, start);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr)   {
+        compile(expr.value);
+        line(expr.name);
+        if (expr.depth < 0) {
+            code.load(INTERPRETER_LOCAL);
+            constant(expr.name, TOKEN);
+            runtime("assignGlobal", "(" + OBJECT + INTERPRETER + "L" + TOKEN + ";)" + OBJECT);
+            return null;
+        }
+
+        int innermost = scopes.size() - 1;
+        if (expr.depth <= innermost)    {
+            code.op(DUP, 1);
+            code.store(local(scopes.get(innermost - expr.depth), expr.slot));
+            return null;
+        }
+        code.load(FRAME_LOCAL);
+        code.push(expr.depth - innermost);
+        code.push(expr.slot);
+        runtime("assignAt", "(" + OBJECT + "L" + ENVIRONMENT + ";II)" + OBJECT);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr)   {
+        String operation = OPERATORS.get(expr.operator.type);
+        if (operation == null)  throw new Unsupported();
+        compile(expr.left);
+        compile(expr.right);
+        line(expr.operator);
+        constant(expr, BINARY);
+        runtime(operation, "(" + OBJECT + OBJECT + "L" + BINARY + ";)" + OBJECT);
+        allocated();
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr)   {
+        line(expr.paren);
+        spend(expr.paren);
+        int receiver = -1;
+        if (expr.callee instanceof Expr.Get)    {
+            Expr.Get get = (Expr.Get)expr.callee;
+            compile(get.object);
+            constant(get, GET);
+            runtime("receiver", "(" + OBJECT + "L" + GET + ";)" + INSTANCE);
+            code.op(DUP, 1);
+            receiver = store();
+            constant(get, GET);
+            runtime("callee", "(" + INSTANCE + "L" + GET + ";)" + OBJECT);
+        } else if (expr.callee instanceof Expr.Super)   {
+            throw new Unsupported();
+        } else  {
+            compile(expr.callee);
+        }
+
+        String arguments;
+        int count = expr.arguments.size();
+        if (count <= 4) {
+            for (Expr argument : expr.arguments)    {
+                compile(argument);
+            }
+            arguments = OBJECT.repeat(count);
+        } else  {
+            code.push(count);
+            code.type(ANEWARRAY, "java/lang/Object");
+            if (Allocations.tracking)   {
+                code.push(count);
+                runtime("arguments", "(I)V");
+            }
+            for (int i = 0; i < count; i++) {
+                code.op(DUP, 1);
+                code.push(i);
+                compile(expr.arguments.get(i));
+                code.op(AASTORE, -3);
+            }
+            arguments = "[" + OBJECT;
+        }
+        String suffix = count <= 4 ? String.valueOf(count) : "";
+
+        if (receiver >= 0)  {
+            code.load(receiver);
+            code.load(INTERPRETER_LOCAL);
+            constant(expr, CALL);
+            runtime("invoke" + suffix, "(" + OBJECT + arguments + INSTANCE + INTERPRETER + "L" + CALL + ";)" + OBJECT);
+        } else  {
+            code.load(INTERPRETER_LOCAL);
+            constant(expr, CALL);
+            runtime("call" + suffix, "(" + OBJECT + arguments + INTERPRETER + "L" + CALL + ";)" + OBJECT);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line(expr.name);
+        constant(expr, GET);
+        runtime("get", "(" + OBJECT + "L" + GET + ";)" + OBJECT);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr)   {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            code.op(ACONST_NULL, 1);
+        } else if (expr.value instanceof Boolean)   {
+            String name = (Boolean)expr.value ? "TRUE" : "FALSE";
+            code.field(GETSTATIC, "java/lang/Boolean", name, "Ljava/lang/Boolean;");
+        } else  {
+            constant(expr.value, null);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        // The left operand stays on the stack as the result unless the
+        // right one has to be evaluated.
+        ClassFileWriter.Code.Label end = code.label();
+        compile(expr.left);
+        code.op(DUP, 1);
+        code.invoke(INVOKESTATIC, PACKAGE + "Interpreter", "isTruthy", "(" + OBJECT + ")Z");
+        code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+        code.op(POP, -1);
+        compile(expr.right);
+        code.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        constant(expr, SET);
+        runtime("fieldOwner", "(" + OBJECT + "L" + SET + ";)" + INSTANCE);
+        compile(expr.value);
+        line(expr.name);
+        constant(expr, SET);
+        runtime("set", "(" + INSTANCE + OBJECT + "L" + SET + ";)" + OBJECT);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        throw new Unsupported();
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr)   {
+        loadSlot(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        if (expr.operator.type == TokenType.BANG)   {
+            runtime("not", "(" + OBJECT + ")" + OBJECT);
+        } else  {
+            constant(expr, UNARY);
+            runtime("negate", "(" + OBJECT + "L" + UNARY + ";)" + OBJECT);
+            allocated();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr)   {
+        if (expr.depth >= 0)    {
+            loadSlot(expr.depth, expr.slot);
+            return null;
+        }
+        code.load(INTERPRETER_LOCAL);
+        constant(expr.name, TOKEN);
+        runtime("global", "(" + INTERPRETER + "L" + TOKEN + ";)" + OBJECT);
+        return null;
+    }
+}
@@ -0,0 +1,326 @@
+package com.craftinginterpreters.lox;
+
+// Operations that compiled code calls instead of emitting them inline. Each
+// one takes the fast path for the operand types it expects and otherwise
+// does exactly what the interpreter does, errors included, so compiled code
+// never has to give up on a function halfway through.
+final class JitRuntime {
+    private JitRuntime() {}
+
+    static Object global(Interpreter interpreter, Token name)   {
+        return interpreter.globals.get(name);
+    }
+
+    static Object assignGlobal(Object value, Interpreter interpreter, Token name)   {
+        interpreter.globals.assign(name, value);
+        return value;
+    }
+
+    static Object assignAt(Object value, Environment frame, int distance, int slot) {
+        frame.assignAt(distance, slot, value);
+        return value;
+    }
+
+    static void spend(Interpreter interpreter, Token token) {
+        Budget budget = interpreter.budget;
+        if (budget != null) budget.spend(token);
+    }
+
+    static void allocated(Object value)    {
+        Allocations.value(value);
+    }
+
+    static void arguments(int count)    {
+        Allocations.arguments(count);
+    }
+
+    static void line(Interpreter interpreter, int line) {
+        interpreter.profiler.line(line);
+    }
+
+    static Object add(Object left, Object right, Expr.Binary expr)  {
+        if (left instanceof Double && right instanceof Double)  {
+            return (double)left + (double)right;
+        }
+        return BinaryOp.GENERIC.apply(expr, left, right);
+    }
+
+    static Object subtract(Object left, Object right, Expr.Binary expr) {
+        if (left instanceof Double && right instanceof Double)  {
+            return (double)left - (double)right;
+        }
+        return BinaryOp.GENERIC.apply(expr, left, right);
+    }
+
+    static Object multiply(Object left, Object right, Expr.Binary expr) {
+        if (left instanceof Double && right instanceof Double)  {
+            return (double)left * (double)right;
+        }
+        return BinaryOp.GENERIC.apply(expr, left, right);
+    }
+
+    static Object divide(Object left, Object right, Expr.Binary expr)   {
+        if (left instanceof Double && right instanceof Double)  {
+            return (double)left / (double)right;
+        }
+        return BinaryOp.GENERIC.apply(expr, left, right);
+    }
+
+    // Comparisons come in two forms: one for values and one for conditions,
+    // which skips boxing the result.
+    static Object greater(Object left, Object right, Expr.Binary expr)  {
+        return isGreater(left, right, expr);
+    }
+
+    static Object greaterEqual(Object left, Object right, Expr.Binary expr) {
+        return isGreaterEqual(left, right, expr);
+    }
+
+    static Object less(Object left, Object right, Expr.Binary expr) {
+        return isLess(left, right, expr);
+    }
+
+    static Object lessEqual(Object left, Object right, Expr.Binary expr)    {
+        return isLessEqual(left, right, expr);
+    }
+
+    static Object equal(Object left, Object right, Expr.Binary expr)    {
+        return Interpreter.isEqual(left, right);
+    }
+
+    static Object notEqual(Object left, Object right, Expr.Binary expr) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    static boolean isGreater(Object left, Object right, Expr.Binary expr)   {
+        Interpreter.checkNumberOperands(expr.operator, left, right);
+        return (double)left > (double)right;
+    }
+
+    static boolean isGreaterEqual(Object left, Object right, Expr.Binary expr)  {
+        Interpreter.checkNumberOperands(expr.operator, left, right);
+        return (double)left >= (double)right;
+    }
+
+    static boolean isLess(Object left, Object right, Expr.Binary expr)  {
+        Interpreter.checkNumberOperands(expr.operator, left, right);
+        return (double)left < (double)right;
+    }
+
+    static boolean isLessEqual(Object left, Object right, Expr.Binary expr) {
+        Interpreter.checkNumberOperands(expr.operator, left, right);
+        return (double)left <= (double)right;
+    }
+
+    static boolean isEqual(Object left, Object right, Expr.Binary expr) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    static boolean isNotEqual(Object left, Object right, Expr.Binary expr)  {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    static Object negate(Object right, Expr.Unary expr) {
+        if (!(right instanceof Double)) {
+            throw new RuntimeError(expr.operator, "Operand must be a number.");
+        }
+        return -(double)right;
+    }
+
+    static Object not(Object right) {
+        return !Interpreter.isTruthy(right);
+    }
+
+    static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    static Object get(Object object, Expr.Get expr) {
+        if (object instanceof YazzInstance) {
+            return ((YazzInstance)object).get(expr.name, expr.cache);
+        }
+        throw new RuntimeError(expr.name, "Only instances have properties");
+    }
+
+    // Checked before the value is evaluated, as in the interpreter.
+    static YazzInstance fieldOwner(Object object, Expr.Set expr)    {
+        if (!(object instanceof YazzInstance))  {
+            throw new RuntimeError(expr.name, "Only instances have fields.");
+        }
+        return (YazzInstance)object;
+    }
+
+    static Object set(YazzInstance instance, Object value, Expr.Set expr)   {
+        instance.set(expr.name, value, expr.cache);
+        return value;
+    }
+
+    // The receiver and callee of obj.method(...) are looked up before the
+    // arguments are evaluated. A field holding a function wins over a
+    // method; otherwise the callee is the class's unbound method, which
+    // the invoke helpers below run with the instance as "this".
+    static YazzInstance receiver(Object object, Expr.Get get)   {
+        if (!(object instanceof YazzInstance))  {
+            throw new RuntimeError(get.name, "Only instances have properties");
+        }
+        return (YazzInstance)object;
+    }
+
+    static Object callee(YazzInstance instance, Expr.Get get)   {
+        int index = get.cache.load(instance.shape, get.name.lexeme());
+        if (index >= 0) return instance.field(index);
+
+        YazzFunction method = instance.klass.findMethod(get.name.lexeme());
+        if (method == null) {
+            throw new RuntimeError(get.name, "Undefined property '" + get.name.lexeme() + "'.");
+        }
+        return method;
+    }
+
+    static Object call0(Object callee, Interpreter interpreter, Expr.Call expr) {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) throw interpreter.tailCall(target, target.newFrame());
+        return function.call0(interpreter, expr.paren);
+    }
+
+    static Object call1(Object callee, Object a, Interpreter interpreter, Expr.Call expr)   {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) {
+            Environment frame = target.newFrame();
+            frame.define(a);
+            throw interpreter.tailCall(target, frame);
+        }
+        return function.call1(interpreter, a, expr.paren);
+    }
+
+    static Object call2(Object callee, Object a, Object b, Interpreter interpreter, Expr.Call expr) {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) {
+            Environment frame = target.newFrame();
+            frame.define(a);
+            frame.define(b);
+            throw interpreter.tailCall(target, frame);
+        }
+        return function.call2(interpreter, a, b, expr.paren);
+    }
+
+    static Object call3(Object callee, Object a, Object b, Object c, Interpreter interpreter, Expr.Call expr)   {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) {
+            Environment frame = target.newFrame();
+            frame.define(a);
+            frame.define(b);
+            frame.define(c);
+            throw interpreter.tailCall(target, frame);
+        }
+        return function.call3(interpreter, a, b, c, expr.paren);
+    }
+
+    static Object call4(Object callee, Object a, Object b, Object c, Object d, Interpreter interpreter, Expr.Call expr)   {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) {
+            Environment frame = target.newFrame();
+            frame.define(a);
+            frame.define(b);
+            frame.define(c);
+            frame.define(d);
+            throw interpreter.tailCall(target, frame);
+        }
+        return function.call4(interpreter, a, b, c, d, expr.paren);
+    }
+
+    static Object call(Object callee, Object[] arguments, Interpreter interpreter, Expr.Call expr)  {
+        YazzCallable function = Interpreter.callable(callee, expr);
+        YazzFunction target = tailTarget(function, expr);
+        if (target != null) {
+            Environment frame = target.newFrame();
+            for (Object argument : arguments)   {
+                frame.define(argument);
+            }
+            throw interpreter.tailCall(target, frame);
+        }
+        return function.call(interpreter, arguments, expr.paren);
+    }
+
+    static Object invoke0(Object callee, YazzInstance instance, Interpreter interpreter, Expr.Call expr)    {
+        YazzFunction method = method(callee, 0, expr);
+        if (method == null) return call0(callee, interpreter, expr);
+        return run(method, method.newFrame(instance), interpreter, expr);
+    }
+
+    static Object invoke1(Object callee, Object a, YazzInstance instance, Interpreter interpreter, Expr.Call expr)  {
+        YazzFunction method = method(callee, 1, expr);
+        if (method == null) return call1(callee, a, interpreter, expr);
+        Environment frame = method.newFrame(instance);
+        frame.define(a);
+        return run(method, frame, interpreter, expr);
+    }
+
+    static Object invoke2(Object callee, Object a, Object b, YazzInstance instance, Interpreter interpreter, Expr.Call expr)    {
+        YazzFunction method = method(callee, 2, expr);
+        if (method == null) return call2(callee, a, b, interpreter, expr);
+        Environment frame = method.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        return run(method, frame, interpreter, expr);
+    }
+
+    static Object invoke3(Object callee, Object a, Object b, Object c, YazzInstance instance, Interpreter interpreter, Expr.Call expr)  {
+        YazzFunction method = method(callee, 3, expr);
+        if (method == null) return call3(callee, a, b, c, interpreter, expr);
+        Environment frame = method.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        return run(method, frame, interpreter, expr);
+    }
+
+    static Object invoke4(Object callee, Object a, Object b, Object c, Object d, YazzInstance instance, Interpreter interpreter, Expr.Call expr)    {
+        YazzFunction method = method(callee, 4, expr);
+        if (method == null) return call4(callee, a, b, c, d, interpreter, expr);
+        Environment frame = method.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        frame.define(d);
+        return run(method, frame, interpreter, expr);
+    }
+
+    static Object invoke(Object callee, Object[] arguments, YazzInstance instance, Interpreter interpreter, Expr.Call expr) {
+        YazzFunction method = method(callee, arguments.length, expr);
+        if (method == null) return call(callee, arguments, interpreter, expr);
+        Environment frame = method.newFrame(instance);
+        for (Object argument : arguments)   {
+            frame.define(argument);
+        }
+        return run(method, frame, interpreter, expr);
+    }
+
+    // Unbound methods never escape to Yazz code, so a callee that still
+    // needs a receiver can only have come from the class, not a field.
+    private static YazzFunction method(Object callee, int count, Expr.Call expr)    {
+        if (!(callee instanceof YazzFunction) || !((YazzFunction)callee).needsReceiver())  return null;
+
+        YazzFunction method = (YazzFunction)callee;
+        if (count != method.arity())    {
+            throw new RuntimeError(expr.paren, "Expected " + method.arity() + " arguments but got " + count + ".");
+        }
+        return method;
+    }
+
+    private static Object run(YazzFunction method, Environment frame, Interpreter interpreter, Expr.Call expr)  {
+        if (expr.tailCall && method.canTailCall())  throw interpreter.tailCall(method, frame);
+        return method.execute(interpreter, frame);
+    }
+
+    private static YazzFunction tailTarget(YazzCallable function, Expr.Call expr)   {
+        if (!expr.tailCall || !(function instanceof YazzFunction))  return null;
+        YazzFunction target = (YazzFunction)function;
+        return target.canTailCall() ? target : null;
+    }
+}
@@ -0,0 +1,205 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Just enough JSON for the language server. Objects read as maps, arrays
+// as lists and numbers as doubles. Anything malformed throws
+// IllegalArgumentException.
+final class Json {
+    private final String text;
+    private int current = 0;
+
+    private Json(String text)   {
+        this.text = text;
+    }
+
+    static Object parse(String text)    {
+        Json json = new Json(text);
+        Object value = json.value();
+        json.whitespace();
+        if (json.current != text.length())  throw json.error("Trailing characters");
+        return value;
+    }
+
+    private Object value()  {
+        whitespace();
+        if (current >= text.length())   throw error("Unexpected end");
+        char c = text.charAt(current);
+        switch (c)  {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", true);
+            case 'f': return literal("false", false);
+            case 'n': return literal("null", null);
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) return number();
+        throw error("Unexpected character");
+    }
+
+    private Map<String, Object> object()    {
+        Map<String, Object> object = new LinkedHashMap<>();
+        current++;
+        whitespace();
+        if (match('}')) return object;
+        do  {
+            whitespace();
+            if (current >= text.length() || text.charAt(current) != '"')    throw error("Expected a key");
+            String key = string();
+            whitespace();
+            if (!match(':'))    throw error("Expected ':'");
+            object.put(key, value());
+            whitespace();
+        } while (match(','));
+        if (!match('}'))    throw error("Expected '}'");
+        return object;
+    }
+
+    private List<Object> array()    {
+        List<Object> array = new ArrayList<>();
+        current++;
+        whitespace();
+        if (match(']')) return array;
+        do  {
+            array.add(value());
+            whitespace();
+        } while (match(','));
+        if (!match(']'))    throw error("Expected ']'");
+        return array;
+    }
+
+    private String string() {
+        StringBuilder builder = new StringBuilder();
+        current++;
+        for (;;)    {
+            if (current >= text.length())   throw error("Unterminated string");
+            char c = text.charAt(current++);
+            if (c == '"')   return builder.toString();
+            if (c != '\\')  {
+                builder.append(c);
+                continue;
+            }
+            if (current >= text.length())   throw error("Unterminated string");
+            char escape = text.charAt(current++);
+            switch (escape) {
+                case '"': case '\\': case '/': builder.append(escape); break;
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    if (current + 4 > text.length())    throw error("Bad escape");
+                    try {
+                        builder.append((char)Integer.parseInt(text.substring(current, current + 4), 16));
+                    } catch (NumberFormatException e)   {
+                        throw error("Bad escape");
+                    }
+                    current += 4;
+                    break;
+                default:
+                    throw error("Bad escape");
+            }
+        }
+    }
+
+    private Double number() {
+        int start = current;
+        while (current < text.length() && "+-0123456789.eE".indexOf(text.charAt(current)) >= 0)  {
+            current++;
+        }
+        try {
+            return Double.parseDouble(text.substring(start, current));
+        } catch (NumberFormatException e)   {
+            throw error("Bad number");
+        }
+    }
+
+    private Object literal(String word, Object value)   {
+        if (!text.startsWith(word, current))    throw error("Unexpected character");
+        current += word.length();
+        return value;
+    }
+
+    private boolean match(char expected)    {
+        if (current < text.length() && text.charAt(current) == expected)    {
+            current++;
+            return true;
+        }
+        return false;
+    }
+
+    private void whitespace()   {
+        while (current < text.length() && Character.isWhitespace(text.charAt(current)))   {
+            current++;
+        }
+    }
+
+    private IllegalArgumentException error(String message)  {
+        return new IllegalArgumentException(message + " at " + current + ".");
+    }
+
+    static String write(Object value)   {
+        StringBuilder builder = new StringBuilder();
+        write(builder, value);
+        return builder.toString();
+    }
+
+    private static void write(StringBuilder builder, Object value)  {
+        if (value == null)  {
+            builder.append("null");
+        } else if (value instanceof Boolean)    {
+            builder.append(value);
+        } else if (value instanceof Number) {
+            double number = ((Number)value).doubleValue();
+            if (number == Math.rint(number) && Math.abs(number) < 1e15)  {
+                builder.append((long)number);
+            } else  {
+                builder.append(String.format(Locale.ROOT, "%s", number));
+            }
+        } else if (value instanceof String) {
+            quote(builder, (String)value);
+        } else if (value instanceof Map)    {
+            builder.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                if (!first) builder.append(',');
+                first = false;
+                quote(builder, entry.getKey().toString());
+                builder.append(':');
+                write(builder, entry.getValue());
+            }
+            builder.append('}');
+        } else if (value instanceof List)   {
+            builder.append('[');
+            boolean first = true;
+            for (Object element : (List<?>)value)   {
+                if (!first) builder.append(',');
+                first = false;
+                write(builder, element);
+            }
+            builder.append(']');
+        } else  {
+            throw new IllegalArgumentException("Can't write a " + value.getClass().getSimpleName() + " as JSON.");
+        }
+    }
+
+    private static void quote(StringBuilder builder, String string) {
+        builder.append('"');
+        for (int i = 0; i < string.length(); i++)   {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\')  {
+                builder.append('\\').append(c);
+            } else if (c < 0x20)    {
+                builder.append(String.format("\\u%04x", (int)c));
+            } else  {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+}
@@ -0,0 +1,230 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The "lsp" command: a language server speaking JSON-RPC over stdin and
+// stdout. It keeps a Document for each open file, takes edits as ranges,
+// and publishes the file's compile errors after every change. Nothing is
+// ever run. Only the messages an editor needs for diagnostics are
+// handled; other requests get a "method not found" error.
+class LanguageServer    {
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INTERNAL_ERROR = -32603;
+
+    // Whole documents are sent when opened, then only the changed ranges.
+    private static final int INCREMENTAL_SYNC = 2;
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final Map<String, Document> documents = new HashMap<>();
+    private boolean shutdown = false;
+
+    LanguageServer(InputStream in, OutputStream out)    {
+        this.in = in;
+        this.out = out;
+    }
+
+    // Returns the exit code once the client has said to exit or closed
+    // the stream: 0 if it asked for a shutdown first, as it should.
+    int run() throws IOException    {
+        for (;;)    {
+            String message = read();
+            if (message == null)    return 1;
+
+            Object request;
+            try {
+                request = Json.parse(message);
+            } catch (IllegalArgumentException e)    {
+                respondError(null, PARSE_ERROR, e.getMessage());
+                continue;
+            }
+            if (!(request instanceof Map))  {
+                respondError(null, INVALID_REQUEST, "Expected an object.");
+                continue;
+            }
+
+            Map<?, ?> map = (Map<?, ?>)request;
+            if ("exit".equals(map.get("method")))   return shutdown ? 0 : 1;
+            try {
+                handle(map);
+            } catch (RuntimeException e)    {
+                if (map.containsKey("id"))  respondError(map.get("id"), INTERNAL_ERROR, String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    private void handle(Map<?, ?> request) throws IOException   {
+        Object id = request.get("id");
+        Object method = request.get("method");
+        Map<?, ?> params = request.get("params") instanceof Map ? (Map<?, ?>)request.get("params") : new HashMap<>();
+
+        if ("initialize".equals(method))    {
+            Map<String, Object> sync = new LinkedHashMap<>();
+            sync.put("openClose", true);
+            sync.put("change", INCREMENTAL_SYNC);
+            Map<String, Object> capabilities = new LinkedHashMap<>();
+            capabilities.put("textDocumentSync", sync);
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("name", "yazz");
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("capabilities", capabilities);
+            result.put("serverInfo", info);
+            respond(id, result);
+        } else if ("shutdown".equals(method))   {
+            shutdown = true;
+            documents.clear();
+            respond(id, null);
+        } else if ("textDocument/didOpen".equals(method))   {
+            Map<?, ?> document = (Map<?, ?>)params.get("textDocument");
+            String uri = (String)document.get("uri");
+            documents.put(uri, new Document((String)document.get("text")));
+            publish(uri);
+        } else if ("textDocument/didChange".equals(method)) {
+            String uri = (String)((Map<?, ?>)params.get("textDocument")).get("uri");
+            Document document = documents.get(uri);
+            if (document == null)   return;
+            for (Object change : (List<?>)params.get("contentChanges"))    {
+                apply(document, (Map<?, ?>)change);
+            }
+            publish(uri);
+        } else if ("textDocument/didClose".equals(method))  {
+            String uri = (String)((Map<?, ?>)params.get("textDocument")).get("uri");
+            documents.remove(uri);
+            send(diagnostics(uri, new ArrayList<>()));
+        } else if (id != null)  {
+            respondError(id, METHOD_NOT_FOUND, "Unhandled method " + method + ".");
+        }
+        // Other notifications, like "initialized", need nothing done.
+    }
+
+    private static void apply(Document document, Map<?, ?> change) {
+        String text = (String)change.get("text");
+        Map<?, ?> range = (Map<?, ?>)change.get("range");
+        if (range == null)  {
+            document.replace(text);
+            return;
+        }
+        Map<?, ?> start = (Map<?, ?>)range.get("start");
+        Map<?, ?> end = (Map<?, ?>)range.get("end");
+        document.edit(number(start.get("line")), number(start.get("character")),
+                number(end.get("line")), number(end.get("character")), text);
+    }
+
+    private static int number(Object value) {
+        return ((Number)value).intValue();
+    }
+
+    private void publish(String uri) throws IOException {
+        Document document = documents.get(uri);
+        List<Object> list = new ArrayList<>();
+        for (Diagnostic diagnostic : document.diagnostics())    {
+            // Without a token the error covers its whole line.
+            Map<String, Object> range = new LinkedHashMap<>();
+            if (diagnostic.offset < 0)  {
+                range.put("start", position(diagnostic.line, 0));
+                range.put("end", position(diagnostic.line + 1, 0));
+            } else  {
+                int end = diagnostic.offset + diagnostic.length;
+                range.put("start", position(diagnostic.line, document.column(diagnostic.offset)));
+                range.put("end", position(document.line(end), document.column(end)));
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("range", range);
+            item.put("severity", 1);
+            item.put("source", "yazz");
+            item.put("message", diagnostic.message);
+            list.add(item);
+        }
+        send(diagnostics(uri, list));
+    }
+
+    private static Map<String, Object> diagnostics(String uri, List<Object> list)   {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        params.put("diagnostics", list);
+        Map<String, Object> notification = new LinkedHashMap<>();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "textDocument/publishDiagnostics");
+        notification.put("params", params);
+        return notification;
+    }
+
+    private static Map<String, Object> position(int line, int character)  {
+        Map<String, Object> position = new LinkedHashMap<>();
+        position.put("line", line);
+        position.put("character", character);
+        return position;
+    }
+
+    private void respond(Object id, Object result) throws IOException   {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("result", result);
+        send(response);
+    }
+
+    private void respondError(Object id, int code, String message) throws IOException   {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", id);
+        response.put("error", error);
+        send(response);
+    }
+
+    private void send(Map<String, Object> message) throws IOException   {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    // One message: headers up to a blank line, then as many bytes as the
+    // Content-Length header says. Null once the stream has ended.
+    private String read() throws IOException    {
+        int length = -1;
+        for (;;)    {
+            String header = readLine();
+            if (header == null) return null;
+            if (header.isEmpty())   break;
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length"))  {
+                try {
+                    length = Integer.parseInt(header.substring(colon + 1).trim());
+                } catch (NumberFormatException e)   {
+                    length = -1;
+                }
+            }
+        }
+        if (length < 0) return "";
+
+        byte[] body = in.readNBytes(length);
+        if (body.length < length)   return null;
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readLine() throws IOException    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (;;)    {
+            int b = in.read();
+            if (b == -1)    return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+            if (b == '\n')  break;
+            if (b != '\r')  line.write(b);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,121 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Finds the modules a script imports and compiles them before it runs.
+// Imports are followed a level at a time: the modules one level names are
+// read, scanned, parsed, resolved and optimized in parallel on the common
+// fork/join pool, and the imports in those make up the next level.
+// Modules are kept for the life of the interpreter by path, with a hash of
+// the contents they were compiled from, so importing a file that hasn't
+// changed again, from any script or a later line at the prompt, costs a
+// read and a hash and never runs it twice. An edited file is compiled and
+// runs again.
+class ModuleLoader  {
+    // Modules go through the --cache directory as well when there is one.
+    AstCache cache = null;
+    private final Map<Path, YazzModule> modules = new HashMap<>();
+
+    // Loads every module the statements import that they aren't bound to
+    // yet, and everything those import in turn. Returns false if a module
+    // couldn't be read or didn't compile, which has been reported.
+    boolean load(List<Stmt> statements, Path directory) {
+        Map<Path, List<Stmt.Import>> level = new LinkedHashMap<>();
+        boolean loaded = imports(statements, directory, level);
+        while (loaded && !level.isEmpty())  {
+            List<Callable<YazzModule>> tasks = new ArrayList<>();
+            for (Map.Entry<Path, List<Stmt.Import>> entry : level.entrySet())   {
+                Path path = entry.getKey();
+                String name = (String)entry.getValue().get(0).path.literal;
+                tasks.add(() -> compile(path, name));
+            }
+            // The map is only written between levels, so the tasks can
+            // all read it.
+            List<Future<YazzModule>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+
+            Map<Path, List<Stmt.Import>> next = new LinkedHashMap<>();
+            int i = 0;
+            for (Map.Entry<Path, List<Stmt.Import>> entry : level.entrySet())   {
+                Stmt.Import first = entry.getValue().get(0);
+                YazzModule module;
+                try {
+                    module = results.get(i++).get();
+                } catch (ExecutionException | InterruptedException e)   {
+                    Yazz.error(first.path, "Can't read module.");
+                    loaded = false;
+                    continue;
+                }
+                // Compile errors were reported as the module was compiled.
+                if (module == null) {
+                    loaded = false;
+                    continue;
+                }
+
+                for (Stmt.Import stmt : entry.getValue())   {
+                    stmt.module = module;
+                }
+                if (modules.get(module.path) != module) {
+                    modules.put(module.path, module);
+                    loaded &= imports(module.statements, module.path.getParent(), next);
+                }
+            }
+            level = next;
+        }
+        return loaded && !Yazz.hadError;
+    }
+
+    // Returns the module already loaded from the path if the file hasn't
+    // changed since, or null if it has a compile error.
+    private YazzModule compile(Path path, String name) throws IOException   {
+        byte[] bytes = Files.readAllBytes(path);
+        String hash = AstCache.key(bytes);
+        YazzModule loaded = modules.get(path);
+        if (loaded != null && loaded.hash.equals(hash)) return loaded;
+
+        Yazz.module.set(name);
+        try {
+            List<Stmt> statements;
+            if (cache != null)  {
+                statements = cache.load(bytes);
+            } else  {
+                statements = Yazz.parse(new String(bytes, Charset.defaultCharset()));
+            }
+            if (statements == null) return null;
+            return new YazzModule(path, hash, statements);
+        } finally   {
+            Yazz.module.remove();
+        }
+    }
+
+    // The Resolver only allows imports at the top level.
+    private static boolean imports(List<Stmt> statements, Path directory, Map<Path, List<Stmt.Import>> level)   {
+        boolean valid = true;
+        for (Stmt statement : statements)   {
+            if (!(statement instanceof Stmt.Import))    continue;
+            Stmt.Import stmt = (Stmt.Import)statement;
+            if (stmt.module != null)    continue;
+
+            try {
+                Path path = directory.resolve((String)stmt.path.literal).toAbsolutePath().normalize();
+                level.computeIfAbsent(path, key -> new ArrayList<>()).add(stmt);
+            } catch (InvalidPathException e)    {
+                Yazz.error(stmt.path, "Invalid module path.");
+                valid = false;
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,146 @@
+package com.craftinginterpreters.lox;
+
+// A built-in function as it is stored in the globals. It times each call
+// for Flight Recorder and otherwise passes everything through.
+class NativeFunction implements YazzCallable {
+    // What a native does. Each takes a fixed number of arguments and
+    // overrides the entry point for it. The array form is sent there, and
+    // the other entry points report the wrong number of arguments.
+    abstract static class Body implements YazzCallable  {
+        @Override
+        public final Object call(Interpreter interpreter, Object[] arguments, Token token) {
+            switch (arguments.length)   {
+                case 0: return call0(interpreter, token);
+                case 1: return call1(interpreter, arguments[0], token);
+                case 2: return call2(interpreter, arguments[0], arguments[1], token);
+                case 3: return call3(interpreter, arguments[0], arguments[1], arguments[2], token);
+                case 4: return call4(interpreter, arguments[0], arguments[1], arguments[2], arguments[3], token);
+            }
+            throw arityError(arguments.length, token);
+        }
+
+        @Override
+        public Object call0(Interpreter interpreter, Token token) {
+            throw arityError(0, token);
+        }
+
+        @Override
+        public Object call1(Interpreter interpreter, Object a, Token token) {
+            throw arityError(1, token);
+        }
+
+        @Override
+        public Object call2(Interpreter interpreter, Object a, Object b, Token token) {
+            throw arityError(2, token);
+        }
+
+        @Override
+        public Object call3(Interpreter interpreter, Object a, Object b, Object c, Token token) {
+            throw arityError(3, token);
+        }
+
+        @Override
+        public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d, Token token) {
+            throw arityError(4, token);
+        }
+
+        private RuntimeError arityError(int count, Token token) {
+            return new RuntimeError(token, "Expected " + arity() + " arguments but got " + count + ".");
+        }
+    }
+
+    private final String name;
+    private final Body body;
+
+    NativeFunction(String name, Body body)  {
+        this.name = name;
+        this.body = body;
+    }
+
+    String name()   {
+        return name;
+    }
+
+    @Override
+    public int arity() {
+        return body.arity();
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call0(interpreter, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call1(interpreter, a, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call2(interpreter, a, b, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call3(interpreter, a, b, c, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call4(interpreter, a, b, c, d, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments, Token token) {
+        YazzEvents.NativeCall event = begin();
+        try {
+            return result(body.call(interpreter, arguments, token));
+        } finally   {
+            end(event);
+        }
+    }
+
+    private static Object result(Object value)  {
+        if (Allocations.tracking)   Allocations.value(value);
+        return value;
+    }
+
+    private static YazzEvents.NativeCall begin()    {
+        return YazzEvents.recording() ? YazzEvents.NativeCall.start() : null;
+    }
+
+    private void end(YazzEvents.NativeCall event)   {
+        if (event != null)  event.end(name);
+    }
+
+    @Override
+    public String toString()    {
+        return body.toString();
+    }
+}
@@ -0,0 +1,277 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs between the Resolver and the Interpreter. Folds expressions whose
+// operands are all literals and drops if/while branches that can never run.
+// Nodes that don't change are returned as is, and rebuilt nodes carry over
+// what the Resolver recorded on the originals, so the output needs no
+// second resolution pass. Anything that would fail at runtime is left alone
+// so the error still happens, with the same message, when it runs.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt>   {
+
+    List<Stmt> optimize(List<Stmt> statements)  {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Stmt statement : statements)   {
+            Stmt result = optimize(statement);
+            if (result != null) optimized.add(result);
+            changed |= result != statement;
+        }
+        return changed ? optimized : statements;
+    }
+
+    private Stmt optimize(Stmt stmt)    {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr)    {
+        return expr.accept(this);
+    }
+
+    // A branch that must still be a statement after its contents were
+    // eliminated becomes an empty block.
+    private Stmt optimizeBranch(Stmt stmt)  {
+        Stmt result = optimize(stmt);
+        if (result == null) return new Stmt.Block(new ArrayList<>());
+        return result;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = optimize(stmt.statements);
+        if (statements == stmt.statements)  return stmt;
+        return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+        boolean changed = false;
+        for (Stmt.Function method : stmt.methods)   {
+            Stmt.Function result = (Stmt.Function)optimize(method);
+            methods.add(result);
+            changed |= result != method;
+        }
+        if (!changed)   return stmt;
+        return new Stmt.Class(stmt.name, stmt.superclass, methods);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt)   {
+        Expr expression = optimize(stmt.expression);
+        // A bare literal has no effect.
+        if (expression instanceof Expr.Literal) return null;
+        if (expression == stmt.expression)  return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt)   {
+        List<Stmt> body = optimize(stmt.body);
+        if (body == stmt.body)  return stmt;
+
+        Stmt.Function result = new Stmt.Function(stmt.name, stmt.params, body);
+        result.method = stmt.method;
+        return result;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt)   {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal)  {
+            if (Interpreter.isTruthy(((Expr.Literal)condition).value))  {
+                return optimize(stmt.thenBranch);
+            }
+            if (stmt.elseBranch == null)    return null;
+            return optimize(stmt.elseBranch);
+        }
+
+        Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch)  {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitImportStmt(Stmt.Import stmt)   {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression)  return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt)   {
+        if (stmt.value == null) return stmt;
+        Expr value = optimize(stmt.value);
+        if (value == stmt.value)    return stmt;
+        return new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null)   return stmt;
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer)    return stmt;
+        return new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal)condition).value))  {
+            return null;
+        }
+
+        Stmt body = optimizeBranch(stmt.body);
+        if (condition == stmt.condition && body == stmt.body)   return stmt;
+        return new Stmt.While(stmt.keyword, condition, body);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr)   {
+        Expr value = optimize(expr.value);
+        if (value == expr.value)    return expr;
+
+        Expr.Assign result = new Expr.Assign(expr.name, value);
+        result.depth = expr.depth;
+        result.slot = expr.slot;
+        return result;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr)   {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal)  {
+            Object leftValue = ((Expr.Literal)left).value;
+            Object rightValue = ((Expr.Literal)right).value;
+            if (canFold(expr.operator.type, leftValue, rightValue))    {
+                return new Expr.Literal(BinaryOp.GENERIC.apply(expr, leftValue, rightValue));
+            }
+        }
+
+        if (left == expr.left && right == expr.right)   return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    private static boolean canFold(TokenType operator, Object left, Object right)   {
+        switch  (operator)  {
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                return true;
+            case PLUS:
+                if (left instanceof String && right instanceof String)  return true;
+                return left instanceof Double && right instanceof Double;
+            default:
+                return left instanceof Double && right instanceof Double;
+        }
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr)   {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        boolean changed = callee != expr.callee;
+        for (Expr argument : expr.arguments)    {
+            Expr result = optimize(argument);
+            arguments.add(result);
+            changed |= result != argument;
+        }
+        if (!changed)   return expr;
+
+        Expr.Call result = new Expr.Call(callee, expr.paren, arguments);
+        result.tailCall = expr.tailCall;
+        return result;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        if (object == expr.object)  return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr)   {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        if (expression == expr.expression)  return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        // The result is whichever operand decided it, so a literal left
+        // operand either is the result or hands over to the right one.
+        if (left instanceof Expr.Literal)   {
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal)left).value);
+            if (expr.operator.type == TokenType.OR) {
+                return truthy ? left : right;
+            }
+            return truthy ? right : left;
+        }
+
+        if (left == expr.left && right == expr.right)   return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value)   return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr)   {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (right instanceof Expr.Literal)  {
+            Object value = ((Expr.Literal)right).value;
+            switch  (expr.operator.type)    {
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+                case MINUS:
+                    if (value instanceof Double)    return new Expr.Literal(-(double)value);
+                    break;
+            }
+        }
+
+        if (right == expr.right)    return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr)   {
+        return expr;
+    }
+}
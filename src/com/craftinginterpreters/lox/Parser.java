@@ -9,40 +9,54 @@ import static com.craftinginterpreters.lox.TokenType.*;
 class Parser {
     private static class ParseError extends RuntimeException    {}
 
+    // Tokens come either from a list scanned up front or, one at a time,
+    // from a scanner as the parser gets to them.
     private final List<Token> tokens;
-    private int current = 0;
+    private final Scanner scanner;
+    private int position = 0;
+    private Token current;
+    private Token previous = null;
 
     Parser(List<Token> tokens)  {
         this.tokens = tokens;
+        this.scanner = null;
+        this.current = pull();
+    }
+
+    Parser(Scanner scanner) {
+        this.tokens = null;
+        this.scanner = scanner;
+        this.current = pull();
     }
 
     List<Stmt> parse()    {
         List<Stmt> statements = new ArrayList<>();
         while   (!isAtEnd())    {
-            statements.add(declaration());
+            statements.add(next());
         }
         return statements;
     }
 
-    private Expr expression()   {
-        return assignment();
+    // For running statements as soon as they are parsed. A statement with
+    // a syntax error comes back as null, after it has been reported.
+    Stmt next() {
+        return declaration();
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
+    // The token after the last one parsed.
+    Token upcoming()    {
+        return peek();
+    }
 
-        while (match(BANG_EQUAL, EQUAL_EQUAL))  {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private Expr expression()   {
+        return expression(ASSIGNMENT);
     }
 
     private Stmt declaration()  {
         try {
             if (match(CLASS)) return classDeclaration();
             if (match(FUN)) return function("function");
+            if (match(IMPORT))  return importDeclaration();
             if  (match(VAR))    return varDeclaration();
 
             return statement();
@@ -82,6 +96,7 @@ class Parser {
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -110,7 +125,7 @@ class Parser {
         }
 
         if (condition == null)  condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null)    {
             body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -149,6 +164,13 @@ class Parser {
         return new Stmt.Return(keyword, value);
     }
 
+    private Stmt importDeclaration()    {
+        Token keyword = previous();
+        Token path = consume(STRING, "Expect module path after 'import'.");
+        consume(SEMICOLON, "Expect ';' after import.");
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt varDeclaration()   {
         Token name = consume(IDENTIFIER, "Expect variable name.");
 
@@ -162,11 +184,12 @@ class Parser {
 
 
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
 
@@ -204,91 +227,129 @@ class Parser {
         return statements;
     }
 
-    private Expr assignment()   {
-        Expr expr = or();
+    // Expressions are parsed by precedence climbing, driven by a table of
+    // what each token does at the start of an expression (prefix) and
+    // after one (infix). Adding an operator is a line in the table.
+    private static final int ASSIGNMENT = 1;
+    private static final int OR = 2;
+    private static final int AND = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
 
-        if  (match(EQUAL))  {
-            Token equals = previous();
-            Expr value = assignment();
+    private interface Prefix    {
+        Expr parse(Parser parser, Token token);
+    }
 
-            if (expr instanceof Expr.Variable)  {
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
-            } else if (expr instanceof Expr.Get)    {
-                Expr.Get get = (Expr.Get)expr;
-                return new Expr.Set(get.object, get.name, value);
-            }
-            error(equals, "Invalid assignment target.");
-        }
-        return expr;
+    private interface Infix {
+        Expr parse(Parser parser, Expr left, Token token);
     }
 
-    private Expr or() {
-        Expr expr = and();
-        while (match(OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+    private static class Rule   {
+        final Prefix prefix;
+        final Infix infix;
+        final int precedence;
+
+        Rule(Prefix prefix, Infix infix, int precedence)    {
+            this.prefix = prefix;
+            this.infix = infix;
+            this.precedence = precedence;
         }
-        return expr;
     }
 
-    private Expr and() {
-        Expr expr = equality();
-        while (match(AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+    private static final Rule[] rules = new Rule[TokenType.values().length];
+
+    static {
+        rule(LEFT_PAREN, Parser::grouping, Parser::call, CALL);
+        rule(DOT, null, Parser::get, CALL);
+        rule(MINUS, Parser::unary, Parser::binary, TERM);
+        rule(PLUS, null, Parser::binary, TERM);
+        rule(SLASH, null, Parser::binary, FACTOR);
+        rule(STAR, null, Parser::binary, FACTOR);
+        rule(BANG, Parser::unary, null, 0);
+        rule(BANG_EQUAL, null, Parser::binary, EQUALITY);
+        rule(EQUAL, null, Parser::assignment, ASSIGNMENT);
+        rule(EQUAL_EQUAL, null, Parser::binary, EQUALITY);
+        rule(GREATER, null, Parser::binary, COMPARISON);
+        rule(GREATER_EQUAL, null, Parser::binary, COMPARISON);
+        rule(LESS, null, Parser::binary, COMPARISON);
+        rule(LESS_EQUAL, null, Parser::binary, COMPARISON);
+        rule(IDENTIFIER, Parser::variable, null, 0);
+        rule(STRING, Parser::literal, null, 0);
+        rule(NUMBER, Parser::literal, null, 0);
+        rule(TokenType.AND, null, Parser::logical, AND);
+        rule(TokenType.OR, null, Parser::logical, OR);
+        rule(FALSE, Parser::literal, null, 0);
+        rule(TRUE, Parser::literal, null, 0);
+        rule(NIL, Parser::literal, null, 0);
+        rule(SUPER, Parser::superExpression, null, 0);
+        rule(THIS, Parser::thisExpression, null, 0);
+    }
+
+    private static void rule(TokenType type, Prefix prefix, Infix infix, int precedence)  {
+        rules[type.ordinal()] = new Rule(prefix, infix, precedence);
+    }
+
+    // Parses an expression made of operators that bind at least as tightly
+    // as the given precedence.
+    private Expr expression(int precedence) {
+        Rule rule = rules[peek().type.ordinal()];
+        if (rule == null || rule.prefix == null)    throw error(peek(), "Expect expression");
+        Expr expr = rule.prefix.parse(this, advance());
+
+        for (;;)    {
+            rule = rules[peek().type.ordinal()];
+            if (rule == null || rule.infix == null || rule.precedence < precedence) return expr;
+            expr = rule.infix.parse(this, expr, advance());
         }
-        return expr;
     }
 
-    private Expr comparison()   {
-        Expr expr = term();
+    private Expr assignment(Expr target, Token equals)  {
+        // Right-associative, so the value may be another assignment.
+        Expr value = expression(ASSIGNMENT);
 
-        while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+        if (target instanceof Expr.Variable)    {
+            Token name = ((Expr.Variable)target).name;
+            return new Expr.Assign(name, value);
+        } else if (target instanceof Expr.Get)  {
+            Expr.Get get = (Expr.Get)target;
+            return new Expr.Set(get.object, get.name, value);
         }
-
-        return expr;
+        error(equals, "Invalid assignment target.");
+        return target;
     }
 
-    private Expr term() {
-        Expr expr = factor();
+    private Expr logical(Expr left, Token operator) {
+        Expr right = expression(rules[operator.type.ordinal()].precedence + 1);
+        return new Expr.Logical(left, operator, right);
+    }
 
-        while   (match(MINUS, PLUS))    {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private Expr binary(Expr left, Token operator)  {
+        Expr right = expression(rules[operator.type.ordinal()].precedence + 1);
+        return new Expr.Binary(left, operator, right);
     }
 
-    private Expr factor()   {
-        Expr expr = unary();
+    private Expr unary(Token operator)  {
+        if (!check(BANG) && !check(MINUS))  return new Expr.Unary(operator, expression(UNARY));
 
-        while   (match(SLASH, STAR))    {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+        // A run of prefix operators is collected and applied from the
+        // inside out rather than taking a few frames of stack for each.
+        List<Token> operators = new ArrayList<>();
+        operators.add(operator);
+        while (check(BANG) || check(MINUS)) {
+            operators.add(advance());
         }
-
-        return expr;
-    }
-
-    private Expr unary()    {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+        Expr expr = expression(UNARY);
+        for (int i = operators.size() - 1; i >= 0; i--) {
+            expr = new Expr.Unary(operators.get(i), expr);
         }
-
-        return call();
+        return expr;
     }
 
-    private Expr finishCall(Expr callee)    {
+    private Expr call(Expr callee, Token leftParen) {
         List<Expr> arguments = new ArrayList<>();
         if (!check(RIGHT_PAREN))    {
             do {
@@ -304,62 +365,45 @@ class Parser {
         return new Expr.Call(callee, paren, arguments);
     }
 
-    private Expr call() {
-        Expr expr = primary();
-
-        while (true) {
-            if (match(LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else if (match(DOT))  {
-                Token name = consume(IDENTIFIER, "Expect property name after '.'.");
-                expr = new Expr.Get(expr, name);
-            } else {
-                break;
-            }
-        }
-
-        return expr;
+    private Expr get(Expr object, Token dot)    {
+        Token name = consume(IDENTIFIER, "Expect property name after '.'.");
+        return new Expr.Get(object, name);
     }
 
-    private Expr primary()  {
-        if  (match(FALSE))  return new Expr.Literal(false);
-        if  (match(TRUE))   return new Expr.Literal(true);
-        if  (match(NIL))    return new Expr.Literal(null);
-
-        if  (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
-
-        if (match(SUPER))   {
-            Token keyword = previous();
-            consume(DOT, "Expect '.' after 'super'.");
-            Token method = consume(IDENTIFIER, "Expect superclass method name.");
-            return new Expr.Super(keyword, method);
+    private Expr literal(Token token)   {
+        switch (token.type) {
+            case FALSE: return new Expr.Literal(false);
+            case TRUE:  return new Expr.Literal(true);
+            case NIL:   return new Expr.Literal(null);
+            default:    return new Expr.Literal(token.literal);
         }
+    }
 
-        if (match(THIS))    return new Expr.This(previous());
+    private Expr superExpression(Token keyword) {
+        consume(DOT, "Expect '.' after 'super'.");
+        Token method = consume(IDENTIFIER, "Expect superclass method name.");
+        return new Expr.Super(keyword, method);
+    }
 
-        if  (match(IDENTIFIER)) {
-            return new Expr.Variable(previous());
-        }
+    private Expr thisExpression(Token keyword)  {
+        return new Expr.This(keyword);
+    }
 
-        if  (match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
+    private Expr variable(Token name)   {
+        return new Expr.Variable(name);
+    }
 
-        throw error(peek(), "Expect expression");
+    private Expr grouping(Token paren)  {
+        Expr expr = expression(ASSIGNMENT);
+        consume(RIGHT_PAREN, "Expect ')' after expression.");
+        return new Expr.Grouping(expr);
     }
 
-    private boolean match(TokenType... types)   {
-        for (TokenType type : types)    {
-            if (check(type))    {
-                advance();
-                return true;
-            }
+    private boolean match(TokenType type)   {
+        if (check(type))    {
+            advance();
+            return true;
         }
-
         return false;
     }
 
@@ -375,20 +419,28 @@ class Parser {
     }
 
     private Token advance() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            previous = current;
+            current = pull();
+        }
         return previous();
     }
 
-    private boolean isAtEnd()   {
+    boolean isAtEnd()   {
         return peek().type == EOF;
     }
 
     private Token peek()    {
-        return tokens.get(current);
+        return current;
     }
 
     private Token previous()    {
-        return tokens.get(current - 1);
+        return previous;
+    }
+
+    private Token pull()    {
+        if (tokens != null) return tokens.get(position++);
+        return scanner.nextToken();
     }
 
     private ParseError error(Token token, String message)   {
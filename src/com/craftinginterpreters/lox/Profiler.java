@@ -0,0 +1,173 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Sampling profiler behind --profile. The interpreter keeps a shadow stack
+// of the Yazz functions it is running and the line each one is on, and a
+// daemon thread samples it every millisecond. The stack is written without
+// any synchronization to keep it cheap, so a sample may now and then catch
+// it in the middle of a call.
+class Profiler {
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int REPORT_ROWS = 20;
+
+    // Frame 0 is the top-level script.
+    private Stmt.Function[] functions = new Stmt.Function[256];
+    private int[] lines = new int[256];
+    private int depth = 1;
+
+    // Sample counts, self and total, per function and per line.
+    private final Map<String, long[]> byFunction = new HashMap<>();
+    private final Map<Integer, long[]> byLine = new HashMap<>();
+    private final Map<String, Long> stacks = new HashMap<>();
+    private long samples = 0;
+    private long started;
+    private long elapsed;
+    private Thread sampler;
+    // Where to write the samples as collapsed stacks, for flame graph
+    // tools, if anywhere.
+    Path stacksFile = null;
+
+    void enter(Stmt.Function function)  {
+        if (depth == functions.length)  {
+            functions = java.util.Arrays.copyOf(functions, depth * 2);
+            lines = java.util.Arrays.copyOf(lines, depth * 2);
+        }
+        functions[depth] = function;
+        lines[depth] = function.name.line;
+        depth++;
+    }
+
+    // A tail call replaces the running function instead of adding a frame.
+    void replace(Stmt.Function function)    {
+        functions[depth - 1] = function;
+        lines[depth - 1] = function.name.line;
+    }
+
+    void exit() {
+        functions[--depth] = null;
+    }
+
+    void line(int line) {
+        lines[depth - 1] = line;
+    }
+
+    int currentLine()   {
+        return lines[depth - 1];
+    }
+
+    void start()    {
+        started = System.nanoTime();
+        sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(INTERVAL_NANOS);
+                sample();
+            }
+        }, "yazz-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e)    {
+            Thread.currentThread().interrupt();
+        }
+        elapsed = System.nanoTime() - started;
+    }
+
+    private void sample()   {
+        Stmt.Function[] functions = this.functions;
+        int[] lines = this.lines;
+        int depth = Math.min(this.depth, Math.min(functions.length, lines.length));
+
+        StringBuilder stack = new StringBuilder();
+        Set<String> seenFunctions = new HashSet<>();
+        Set<Integer> seenLines = new HashSet<>();
+        for (int i = 0; i < depth; i++) {
+            String name = frameName(i == 0 ? null : functions[i]);
+            int line = lines[i];
+            boolean top = i == depth - 1;
+
+            if (i > 0)  stack.append(';');
+            stack.append(name);
+            count(byFunction, name, top, seenFunctions.add(name));
+            if (line > 0)   count(byLine, line, top, seenLines.add(line));
+        }
+        stacks.merge(stack.toString(), 1L, Long::sum);
+        samples++;
+    }
+
+    private static <K> void count(Map<K, long[]> counts, K key, boolean self, boolean first) {
+        long[] count = counts.computeIfAbsent(key, k -> new long[2]);
+        if (self)   count[0]++;
+        if (first)  count[1]++;
+    }
+
+    private static String frameName(Stmt.Function function)   {
+        if (function == null)   return "<script>";
+        return function.name.lexeme() + ":" + function.name.line;
+    }
+
+    void report(PrintStream out)    {
+        double millisPerSample = samples == 0 ? 0 : elapsed / 1e6 / samples;
+        out.println();
+        out.printf("Profile: %d samples over %.0f ms%n", samples, elapsed / 1e6);
+
+        out.println();
+        out.println("   Self      Total   Function (name:line declared)");
+        for (Map.Entry<String, long[]> entry : hottest(byFunction))  {
+            row(out, entry.getValue(), millisPerSample, entry.getKey());
+        }
+
+        out.println();
+        out.println("   Self      Total   Line");
+        for (Map.Entry<Integer, long[]> entry : hottest(byLine))  {
+            row(out, entry.getValue(), millisPerSample, "line " + entry.getKey());
+        }
+
+        if (stacksFile == null) return;
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(stacksFile, StandardCharsets.UTF_8)))  {
+            for (Map.Entry<String, Long> entry : stacks.entrySet())   {
+                writer.println(entry.getKey() + " " + entry.getValue());
+            }
+            out.println();
+            out.println("Collapsed stacks written to " + stacksFile);
+        } catch (IOException e) {
+            out.println("Could not write " + stacksFile + ": " + e.getMessage());
+        }
+    }
+
+    private <K> List<Map.Entry<K, long[]>> hottest(Map<K, long[]> counts)   {
+        List<Map.Entry<K, long[]>> rows = new ArrayList<>(counts.entrySet());
+        rows.sort((a, b) -> {
+            int bySelf = Long.compare(b.getValue()[0], a.getValue()[0]);
+            return bySelf != 0 ? bySelf : Long.compare(b.getValue()[1], a.getValue()[1]);
+        });
+        return rows.subList(0, Math.min(REPORT_ROWS, rows.size()));
+    }
+
+    private void row(PrintStream out, long[] count, double millisPerSample, String name)   {
+        out.printf("%6.1f%% %9.1f%%   %s  (%.0f ms self, %.0f ms total)%n",
+                percent(count[0]), percent(count[1]), name, count[0] * millisPerSample, count[1] * millisPerSample);
+    }
+
+    private double percent(long count)  {
+        return samples == 0 ? 0 : 100.0 * count / samples;
+    }
+}
@@ -6,12 +6,17 @@ import java.util.Map;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
 
-    Resolver(Interpreter interpreter)   {
-        this.interpreter = interpreter;
+    private static class Local  {
+        final int slot;
+        boolean defined;
+
+        Local(int slot, boolean defined)    {
+            this.slot = slot;
+            this.defined = defined;
+        }
     }
 
     private enum FunctionType   {
@@ -34,6 +39,10 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
         beginScope();
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER)   {
+            scopes.peek().put("this", new Local(0, true));
+            function.method = true;
+        }
         for (Token param : function.params) {
             declare(param);
             define(param);
@@ -46,7 +55,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
 
 
     private void beginScope()   {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new HashMap<String, Local>());
     }
 
     private void endScope() {
@@ -56,27 +65,48 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
     private void declare(Token name)    {
         if (scopes.isEmpty())   return;
 
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
+        Map<String, Local> scope = scopes.peek();
+        if (scope.containsKey(name.lexeme())) {
             Yazz.error(name, "Already variable with this name in this scope.");
         }
-        scope.put(name.lexeme, false);
+        // Slots are handed out in declaration order, which is the order the
+        // interpreter defines them in at runtime.
+        scope.put(name.lexeme(), new Local(scope.size(), false));
     }
 
     private void define(Token name) {
         if (scopes.isEmpty())   return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme()).defined = true;
     }
 
     private void resolveLocal(Expr expr, Token name)    {
         for (int i = scopes.size() - 1; i >= 0; i--)    {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+            Local local = scopes.get(i).get(name.lexeme());
+            if (local != null) {
+                bind(expr, scopes.size() - 1 - i, local.slot);
                 return;
             }
         }
     }
 
+    // Records where a resolved local lives on the node itself so the
+    // interpreter reads it back with a field load.
+    private static void bind(Expr expr, int depth, int slot)    {
+        if (expr instanceof Expr.Variable)  {
+            ((Expr.Variable)expr).depth = depth;
+            ((Expr.Variable)expr).slot = slot;
+        } else if (expr instanceof Expr.Assign) {
+            ((Expr.Assign)expr).depth = depth;
+            ((Expr.Assign)expr).slot = slot;
+        } else if (expr instanceof Expr.This)   {
+            ((Expr.This)expr).depth = depth;
+            ((Expr.This)expr).slot = slot;
+        } else if (expr instanceof Expr.Super)  {
+            ((Expr.Super)expr).depth = depth;
+            ((Expr.Super)expr).slot = slot;
+        }
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
@@ -93,7 +123,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
         declare(stmt.name);
         define(stmt.name);
 
-        if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme))    {
+        if (stmt.superclass != null && stmt.name.lexeme().equals(stmt.superclass.name.lexeme()))    {
             Yazz.error(stmt.superclass.name, "A class can't inherit from itself.");
         }
 
@@ -104,21 +134,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
 
         if (stmt.superclass != null)    {
             beginScope();
-            scopes.peek().put("super", true);
+            scopes.peek().put("super", new Local(0, true));
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-
         for (Stmt.Function method : stmt.methods)   {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme.equals("init"))  {
+            if (method.name.lexeme().equals("init"))  {
                 declaration = FunctionType.INITIALIZER;
             }
             resolveFunction(method, declaration);
         }
 
-        endScope();
         if (stmt.superclass != null)    endScope();
         currentClass = enclosingClass;
         return null;
@@ -147,6 +173,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt)   {
+        // A module runs in the global scope, once, so importing it
+        // anywhere but the top level would only look conditional.
+        if (!scopes.isEmpty())  {
+            Yazz.error(stmt.keyword, "Can't import inside a block or function.");
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         resolve(stmt.expression);
@@ -165,6 +201,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
                 Yazz.error(stmt.keyword, "Can't return a value from an initializer");
             }
             resolve(stmt.value);
+
+            // Nothing is left to do in this function once the call returns,
+            // so the interpreter can run the callee in place of it.
+            if (stmt.value instanceof Expr.Call)   {
+                ((Expr.Call)stmt.value).tailCall = true;
+            }
         }
         return null;
     }
@@ -188,8 +230,8 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>   {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr)   {
-        if (!scopes.isEmpty() &&
-                scopes.peek().get(expr.name.lexeme) == Boolean.FALSE)   {
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme()) &&
+                !scopes.peek().get(expr.name.lexeme()).defined)   {
             Yazz.error(expr.name,
                     "Can't read local variable in its own initializer");
         }
@@ -1,53 +1,90 @@
 package com.craftinginterpreters.lox;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
+// Works over a char array of the source. Tokens refer back into it by
+// offset rather than holding their own copy of the text, so the only
+// Strings scanning makes are the values of string literals.
 class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
-
-    private static final Map<String, TokenType> keywords;
+    // 10^0 to 10^22, the powers of ten a double holds exactly.
+    private static final double[] POWERS_OF_TEN = new double[23];
     static  {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)  {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
     }
 
+    private final char[] source;
+    // Where the source ends, which can be short of the array's length.
+    private final int end;
+    // Whether identifiers are interned as they are scanned. The language
+    // server scans every half-typed name and never runs anything, so its
+    // tokens leave that to Token.symbol(), which nothing it does calls.
+    private final boolean intern;
+    // The token the last call to scanToken() found, if it found one.
+    private Token token = null;
+
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
     Scanner(String source) {
+        this.source = source.toCharArray();
+        this.end = this.source.length;
+        this.intern = true;
+    }
+
+    // Scans the decoded text in place when it is backed by an array, as
+    // what Charset.decode returns is.
+    Scanner(CharBuffer source)  {
+        if (source.hasArray() && source.arrayOffset() == 0 && source.position() == 0)   {
+            this.source = source.array();
+            this.end = source.limit();
+        } else  {
+            this.source = source.toString().toCharArray();
+            this.end = this.source.length;
+        }
+        this.intern = true;
+    }
+
+    // Scans part of a larger text, for the language server, which only
+    // scans again the part of a file that changed. Lines count from 1 at
+    // the start of the part.
+    Scanner(char[] source, int start, int end)  {
         this.source = source;
+        this.current = start;
+        this.end = end;
+        this.intern = false;
     }
 
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (;;)    {
+            Token token = nextToken();
+            tokens.add(token);
+            if (token.type == EOF)  return tokens;
+        }
+    }
+
+    // Scans just far enough for one more token. Once the source runs out
+    // every call returns an EOF token.
+    Token nextToken()   {
         while (!isAtEnd()) {
             // we are at the beginning of the nex lexeme
             start = current;
             scanToken();
+            if (token != null)  {
+                Token next = token;
+                token = null;
+                return next;
+            }
         }
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        return new Token(EOF, source, current, 0, null, line);
     }
     private void scanToken() {
         char c = advance();
@@ -119,12 +156,63 @@ class Scanner {
         while   (isAlphaNumeric(peek()))    {
             advance();
         }
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null)   {
-            type = IDENTIFIER;
+        TokenType type = identifierType();
+        if (type == IDENTIFIER && intern)   {
+            token = new Token(Symbol.intern(source, start, current - start), source, start, line);
+        } else  {
+            addToken(type);
         }
-        addToken(type);
+    }
+
+    // Keywords are told apart by their first letter or two, then checked
+    // against the rest of the word in place.
+    private TokenType identifierType()  {
+        switch (source[start])  {
+            case 'a': return keyword(1, "nd", AND);
+            case 'c': return keyword(1, "lass", CLASS);
+            case 'e': return keyword(1, "lse", ELSE);
+            case 'f':
+                if (current - start > 1)    {
+                    switch (source[start + 1])  {
+                        case 'a': return keyword(2, "lse", FALSE);
+                        case 'o': return keyword(2, "r", FOR);
+                        case 'u': return keyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i':
+                if (current - start > 1)    {
+                    switch (source[start + 1])  {
+                        case 'f': return keyword(2, "", IF);
+                        case 'm': return keyword(2, "port", IMPORT);
+                    }
+                }
+                break;
+            case 'n': return keyword(1, "il", NIL);
+            case 'o': return keyword(1, "r", OR);
+            case 'p': return keyword(1, "rint", PRINT);
+            case 'r': return keyword(1, "eturn", RETURN);
+            case 's': return keyword(1, "uper", SUPER);
+            case 't':
+                if (current - start > 1)    {
+                    switch (source[start + 1])  {
+                        case 'h': return keyword(2, "is", THIS);
+                        case 'r': return keyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v': return keyword(1, "ar", VAR);
+            case 'w': return keyword(1, "hile", WHILE);
+        }
+        return IDENTIFIER;
+    }
+
+    private TokenType keyword(int offset, String rest, TokenType type)  {
+        if (current - start != offset + rest.length())  return IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (source[start + offset + i] != rest.charAt(i))   return IDENTIFIER;
+        }
+        return type;
     }
 
     private void number()   {
@@ -139,7 +227,28 @@ class Scanner {
         while   (isDigit(peek()))   {
             advance();
         }
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER, numberValue());
+    }
+
+    // A number of at most 15 digits is exact as a long, and dividing that
+    // by an exact power of ten rounds the way Double.parseDouble does.
+    // Longer numbers go through a String.
+    private double numberValue()    {
+        long digits = 0;
+        int count = 0;
+        int decimals = 0;
+        for (int i = start; i < current; i++)   {
+            if (source[i] == '.')   {
+                decimals = current - i - 1;
+                continue;
+            }
+            digits = digits * 10 + (source[i] - '0');
+            count++;
+        }
+        if (count > 15 || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(source, start, current - start));
+        }
+        return digits / POWERS_OF_TEN[decimals];
     }
 
     private void string()   {
@@ -156,7 +265,7 @@ class Scanner {
         // The closing ".
         advance();
         // Trim the surrounding quotes
-        String value = source.substring(start + 1, current - 1);
+        String value = new String(source, start + 1, current - start - 2);
         addToken(STRING, value);
     }
 
@@ -164,7 +273,7 @@ class Scanner {
         if  (isAtEnd()) {
             return false;
         }
-        if  (source.charAt(current) != expected)    {
+        if  (source[current] != expected)    {
             return false;
         }
         current++;
@@ -175,14 +284,14 @@ class Scanner {
         if  (isAtEnd()) {
             return '\0';
         }
-        return source.charAt(current);
+        return source[current];
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) {
+        if (current + 1 >= end) {
             return '\0';
         }
-        return source.charAt(current + 1);
+        return source[current + 1];
     }
     private boolean isAlpha(char c) {
         return  (c >= 'a' && c <= 'z') ||
@@ -199,12 +308,12 @@ class Scanner {
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 
     private char advance() {
         current++;
-        return source.charAt(current - 1);
+        return source[current - 1];
     }
 
     private void addToken(TokenType type) {
@@ -212,7 +321,6 @@ class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        token = new Token(type, source, start, current - start, literal, line);
     }
 }
\ No newline at end of file
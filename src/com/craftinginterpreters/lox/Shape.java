@@ -0,0 +1,50 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The layout of an instance's fields: which names it has and where each one
+// lives in the instance's value array. Instances of a class that gained the
+// same fields in the same order share one shape, so a shape check stands in
+// for a name lookup.
+class Shape {
+    private final Map<String, Integer> indices;
+    private final Map<String, Shape> transitions = new HashMap<>();
+    final int size;
+
+    Shape() {
+        this.indices = new HashMap<>();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, String name)    {
+        this.indices = new HashMap<>(parent.indices);
+        this.indices.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    int indexOf(String name)    {
+        Integer index = indices.get(name);
+        if (index == null)  return -1;
+        return index;
+    }
+
+    // Field names by index.
+    String[] names()    {
+        String[] names = new String[size];
+        for (Map.Entry<String, Integer> entry : indices.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+        return names;
+    }
+
+    // The shape an instance moves to when it gains a new field.
+    Shape with(String name) {
+        Shape next = transitions.get(name);
+        if (next == null)   {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,348 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.AstWriter.*;
+
+// --snapshot and --restore: everything reachable from the globals after a
+// script has run (functions and their closures, classes, instances and
+// plain values) saved to a file, so later runs can start from that state
+// instead of running the script again. Objects shared between several
+// places, and cycles, come back the way they were. Declarations are kept
+// in the .yazzc format and natives by name.
+//
+// After the header and the declarations come the objects, each one after
+// everything it needs to be created: a function after its closure, an
+// instance after its class. Then what every environment and instance
+// holds, which can refer to any object. Object 0 is the global scope.
+class Snapshot  {
+    static final int MAGIC = 0x595A5353;    // "YZSS"
+    static final int VERSION = 1;
+
+    private static final int ENVIRONMENT = 1;
+    private static final int FUNCTION = 2;
+    private static final int CLASS = 3;
+    private static final int INSTANCE = 4;
+    private static final int NATIVE = 5;
+
+    // A value that is one of the objects, after AstWriter's value tags.
+    private static final int OBJECT = 5;
+
+    private final Map<Object, Integer> ids = new IdentityHashMap<>();
+    private final List<Object> objects = new ArrayList<>();
+    private final Map<Stmt.Function, Integer> declarationIds = new IdentityHashMap<>();
+    private final List<Stmt> declarations = new ArrayList<>();
+    // Environments and instances whose contents haven't been looked at.
+    private final ArrayDeque<Object> unscanned = new ArrayDeque<>();
+
+    private Snapshot() {}
+
+    // Throws IllegalArgumentException for a value only the VM creates.
+    static void save(Interpreter interpreter, Path path) throws IOException  {
+        Snapshot snapshot = new Snapshot();
+        snapshot.ids.put(interpreter.globals, 0);
+        snapshot.objects.add(interpreter.globals);
+        for (Object value : interpreter.globals.globalValues().values())    {
+            snapshot.add(value);
+        }
+        while (!snapshot.unscanned.isEmpty())   {
+            snapshot.scan(snapshot.unscanned.pop());
+        }
+        Files.write(path, snapshot.write());
+    }
+
+    // Contents are only looked at once the object has an id, which keeps
+    // the recursion as deep as the longest chain of scopes or superclasses
+    // rather than the longest chain of references.
+    private void add(Object value)  {
+        if (value == null || value instanceof Boolean || value instanceof Double || value instanceof String)  return;
+        if (ids.containsKey(value)) return;
+
+        if (value instanceof Environment)   {
+            add(((Environment)value).enclosing);
+            unscanned.add(value);
+        } else if (value instanceof YazzFunction)   {
+            YazzFunction function = (YazzFunction)value;
+            add(function.closure());
+            add(function.receiver());
+            if (!declarationIds.containsKey(function.declaration()))    {
+                declarationIds.put(function.declaration(), declarations.size());
+                declarations.add(function.declaration());
+            }
+        } else if (value instanceof YazzClass)  {
+            YazzClass klass = (YazzClass)value;
+            add(klass.superclass);
+            for (YazzFunction method : klass.methods().values())    {
+                add(method);
+            }
+        } else if (value instanceof YazzInstance)   {
+            add(((YazzInstance)value).klass);
+            unscanned.add(value);
+        } else if (!(value instanceof NativeFunction))  {
+            throw new IllegalArgumentException("Can't snapshot '" + value + "'. Only the tree-walking interpreter's values can be saved.");
+        }
+        ids.put(value, objects.size());
+        objects.add(value);
+    }
+
+    private void scan(Object object)    {
+        if (object instanceof Environment)  {
+            Environment environment = (Environment)object;
+            for (int i = 0; i < environment.slotCount(); i++)   {
+                add(environment.getAt(0, i));
+            }
+        } else  {
+            YazzInstance instance = (YazzInstance)object;
+            for (int i = 0; i < instance.shape.size; i++)   {
+                add(instance.field(i));
+            }
+        }
+    }
+
+    private byte[] write() throws IOException   {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        byte[] tree = AstWriter.write(declarations);
+        out.writeInt(tree.length);
+        out.write(tree);
+
+        out.writeInt(objects.size());
+        for (Object object : objects.subList(1, objects.size()))    {
+            if (object instanceof Environment)  {
+                out.writeByte(ENVIRONMENT);
+                out.writeInt(ids.get(((Environment)object).enclosing));
+            } else if (object instanceof YazzFunction)  {
+                YazzFunction function = (YazzFunction)object;
+                out.writeByte(FUNCTION);
+                out.writeInt(declarationIds.get(function.declaration()));
+                out.writeInt(ids.get(function.closure()));
+                out.writeBoolean(function.isInitializer());
+                out.writeInt(function.receiver() == null ? -1 : ids.get(function.receiver()));
+            } else if (object instanceof YazzClass) {
+                YazzClass klass = (YazzClass)object;
+                out.writeByte(CLASS);
+                string(out, klass.name);
+                out.writeInt(klass.superclass == null ? -1 : ids.get(klass.superclass));
+                out.writeInt(klass.fieldCapacity);
+                out.writeInt(klass.methods().size());
+                for (Map.Entry<String, YazzFunction> method : klass.methods().entrySet())   {
+                    string(out, method.getKey());
+                    out.writeInt(ids.get(method.getValue()));
+                }
+            } else if (object instanceof YazzInstance)  {
+                out.writeByte(INSTANCE);
+                out.writeInt(ids.get(((YazzInstance)object).klass));
+            } else  {
+                out.writeByte(NATIVE);
+                string(out, ((NativeFunction)object).name());
+            }
+        }
+
+        Map<String, Object> globals = ((Environment)objects.get(0)).globalValues();
+        out.writeInt(globals.size());
+        for (Map.Entry<String, Object> global : globals.entrySet()) {
+            string(out, global.getKey());
+            value(out, global.getValue());
+        }
+        for (Object object : objects.subList(1, objects.size()))    {
+            if (object instanceof Environment)  {
+                Environment environment = (Environment)object;
+                out.writeInt(environment.slotCount());
+                for (int i = 0; i < environment.slotCount(); i++)   {
+                    value(out, environment.getAt(0, i));
+                }
+            } else if (object instanceof YazzInstance)  {
+                // By name in the order they were added, so restoring them
+                // walks the class's shapes the same way.
+                YazzInstance instance = (YazzInstance)object;
+                String[] names = instance.shape.names();
+                out.writeInt(names.length);
+                for (int i = 0; i < names.length; i++)  {
+                    string(out, names[i]);
+                    value(out, instance.field(i));
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void value(DataOutputStream out, Object value) throws IOException   {
+        if (value == null)  {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean)    {
+            out.writeByte((Boolean)value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double)value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            string(out, (String)value);
+        } else  {
+            out.writeByte(OBJECT);
+            out.writeInt(ids.get(value));
+        }
+    }
+
+    // writeUTF stops at 64K, which a string read from a file can pass.
+    private static void string(DataOutputStream out, String string) throws IOException  {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Defines the saved globals in a fresh interpreter, replacing any that
+    // are already there. A file that isn't a current snapshot throws
+    // IllegalArgumentException.
+    static void restore(Interpreter interpreter, Path path) throws IOException  {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)));
+        try {
+            restore(interpreter, in);
+        } catch (EOFException | BufferUnderflowException e)    {
+            throw new IllegalArgumentException("Unexpected end of file.");
+        }
+    }
+
+    private static void restore(Interpreter interpreter, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)   {
+            throw new IllegalArgumentException("Not a current snapshot file.");
+        }
+        byte[] tree = new byte[length(in)];
+        in.readFully(tree);
+        List<Stmt> declarations = AstReader.read(ByteBuffer.wrap(tree));
+
+        Map<String, Object> natives = new HashMap<>(interpreter.globals.globalValues());
+        Object[] objects = new Object[length(in)];
+        if (objects.length == 0)    throw new IllegalArgumentException("Missing global scope.");
+        objects[0] = interpreter.globals;
+        for (int id = 1; id < objects.length; id++) {
+            int kind = in.readByte();
+            switch (kind)   {
+                case ENVIRONMENT:
+                    objects[id] = new Environment(object(in, objects, Environment.class));
+                    break;
+                case FUNCTION: {
+                    int declaration = in.readInt();
+                    if (declaration < 0 || declaration >= declarations.size())  {
+                        throw new IllegalArgumentException("Bad declaration " + declaration + ".");
+                    }
+                    Environment closure = object(in, objects, Environment.class);
+                    boolean isInitializer = in.readBoolean();
+                    YazzInstance receiver = optional(in, objects, YazzInstance.class);
+                    YazzFunction function = new YazzFunction((Stmt.Function)declarations.get(declaration), closure, isInitializer);
+                    objects[id] = receiver == null ? function : function.bind(receiver);
+                    break;
+                }
+                case CLASS: {
+                    String name = string(in);
+                    YazzClass superclass = optional(in, objects, YazzClass.class);
+                    int fieldCapacity = in.readInt();
+                    int count = length(in);
+                    Map<String, YazzFunction> methods = new HashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        methods.put(string(in), object(in, objects, YazzFunction.class));
+                    }
+                    YazzClass klass = new YazzClass(name, superclass, methods);
+                    klass.fieldCapacity = fieldCapacity;
+                    objects[id] = klass;
+                    break;
+                }
+                case INSTANCE:
+                    objects[id] = new YazzInstance(object(in, objects, YazzClass.class));
+                    break;
+                case NATIVE: {
+                    String name = string(in);
+                    if (!(natives.get(name) instanceof NativeFunction)) {
+                        throw new IllegalArgumentException("No native function '" + name + "'.");
+                    }
+                    objects[id] = natives.get(name);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Bad object tag " + kind + ".");
+            }
+        }
+
+        int globals = length(in);
+        for (int i = 0; i < globals; i++)   {
+            interpreter.globals.define(string(in), value(in, objects));
+        }
+        for (int id = 1; id < objects.length; id++) {
+            if (objects[id] instanceof Environment) {
+                Environment environment = (Environment)objects[id];
+                int count = length(in);
+                for (int i = 0; i < count; i++) {
+                    environment.define(value(in, objects));
+                }
+            } else if (objects[id] instanceof YazzInstance) {
+                YazzInstance instance = (YazzInstance)objects[id];
+                int count = length(in);
+                for (int i = 0; i < count; i++) {
+                    Shape target = instance.shape.with(string(in));
+                    instance.put(target, target.size - 1, value(in, objects));
+                }
+            }
+        }
+        if (in.read() != -1)    throw new IllegalArgumentException("Trailing bytes.");
+    }
+
+    private static Object value(DataInputStream in, Object[] objects) throws IOException    {
+        int tag = in.readByte();
+        switch (tag)    {
+            case NIL: return null;
+            case TRUE: return true;
+            case FALSE: return false;
+            case NUMBER: return in.readDouble();
+            case STRING: return string(in);
+            case OBJECT: return object(in, objects, Object.class);
+        }
+        throw new IllegalArgumentException("Bad value tag " + tag + ".");
+    }
+
+    // Only objects before the one being read exist yet, so a reference to
+    // a later one is as bad as one out of range.
+    private static <T> T object(DataInputStream in, Object[] objects, Class<T> type) throws IOException    {
+        int id = in.readInt();
+        if (id < 0 || id >= objects.length || !type.isInstance(objects[id]))    {
+            throw new IllegalArgumentException("Bad object reference " + id + ".");
+        }
+        return type.cast(objects[id]);
+    }
+
+    private static <T> T optional(DataInputStream in, Object[] objects, Class<T> type) throws IOException  {
+        in.mark(4);
+        if (in.readInt() == -1) return null;
+        in.reset();
+        return object(in, objects, type);
+    }
+
+    private static String string(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[length(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int length(DataInputStream in) throws IOException    {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())  throw new IllegalArgumentException("Bad length " + length + ".");
+        return length;
+    }
+}
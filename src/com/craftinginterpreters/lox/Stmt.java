@@ -9,6 +9,7 @@ abstract class Stmt {
     R visitExpressionStmt(Expression stmt);
     R visitFunctionStmt(Function stmt);
     R visitIfStmt(If stmt);
+    R visitImportStmt(Import stmt);
     R visitPrintStmt(Print stmt);
     R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
@@ -69,6 +70,11 @@ abstract class Stmt {
     final Token name;
     final List<Token> params;
     final List<Stmt> body;
+    boolean method;
+    int calls;
+    int backEdges;
+    JitCode code;
+    boolean uncompilable;
     }
     static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -86,6 +92,21 @@ abstract class Stmt {
     final Stmt thenBranch;
     final Stmt elseBranch;
     }
+    static class Import extends Stmt {
+    Import(Token keyword, Token path) {
+    this.keyword = keyword;
+    this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+    return visitor.visitImportStmt(this);
+    }
+
+    final Token keyword;
+    final Token path;
+    YazzModule module;
+    }
     static class Print extends Stmt {
     Print(Expr expression) {
     this.expression = expression;
@@ -127,7 +148,8 @@ abstract class Stmt {
     final Expr initializer;
     }
     static class While extends Stmt {
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+    this.keyword = keyword;
     this.condition = condition;
     this.body = body;
     }
@@ -137,6 +159,7 @@ abstract class Stmt {
     return visitor.visitWhileStmt(this);
     }
 
+    final Token keyword;
     final Expr condition;
     final Stmt body;
     }
@@ -0,0 +1,82 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// An identifier, interned so that every token spelling it shares one
+// Symbol. Each gets the next index as it is first seen, and the globals
+// are an array in that order, so looking one up is an array load rather
+// than hashing its name. Scripts are compiled on several threads when
+// they import modules, so interning is synchronized.
+final class Symbol  {
+    private static Symbol[] table = new Symbol[1024];
+    private static Symbol[] byIndex = new Symbol[256];
+    private static int count = 0;
+
+    final String name;
+    final int index;
+
+    private Symbol(String name, int index)  {
+        this.name = name;
+        this.index = index;
+    }
+
+    static Symbol intern(String name)   {
+        char[] chars = name.toCharArray();
+        return intern(chars, 0, chars.length);
+    }
+
+    // Finds the symbol spelled by part of a scanner's source without
+    // making a String of it unless it is new.
+    static synchronized Symbol intern(char[] source, int start, int length) {
+        // The same hash as String's, so a table of them spreads the same.
+        int hash = 0;
+        for (int i = start; i < start + length; i++)    {
+            hash = 31 * hash + source[i];
+        }
+
+        int mask = table.length - 1;
+        int i = (hash ^ (hash >>> 16)) & mask;
+        for (Symbol symbol = table[i]; symbol != null; symbol = table[i])  {
+            if (matches(symbol.name, source, start, length))    return symbol;
+            i = (i + 1) & mask;
+        }
+
+        Symbol symbol = new Symbol(new String(source, start, length), count);
+        if (count == byIndex.length)    byIndex = Arrays.copyOf(byIndex, count * 2);
+        byIndex[count++] = symbol;
+        table[i] = symbol;
+        // Kept at most half full.
+        if (count * 2 > table.length)   grow();
+        return symbol;
+    }
+
+    static synchronized Symbol at(int index)    {
+        return byIndex[index];
+    }
+
+    private static boolean matches(String name, char[] source, int start, int length)   {
+        if (name.length() != length)    return false;
+        for (int i = 0; i < length; i++)    {
+            if (name.charAt(i) != source[start + i])    return false;
+        }
+        return true;
+    }
+
+    private static void grow()  {
+        Symbol[] old = table;
+        table = new Symbol[old.length * 2];
+        int mask = table.length - 1;
+        for (Symbol symbol : old)   {
+            if (symbol == null) continue;
+            int hash = symbol.name.hashCode();
+            int i = (hash ^ (hash >>> 16)) & mask;
+            while (table[i] != null)    i = (i + 1) & mask;
+            table[i] = symbol;
+        }
+    }
+
+    @Override
+    public String toString()    {
+        return name;
+    }
+}
@@ -0,0 +1,13 @@
+package com.craftinginterpreters.lox;
+
+// Thrown by a call in tail position so that the function running it goes
+// on with the callee's body and frame instead of calling it from a deeper
+// Java frame. Each interpreter throws the same instance over and over.
+class TailCall extends RuntimeException {
+    YazzFunction function;
+    Environment frame;
+
+    TailCall()  {
+        super(null, null, false, false);
+    }
+}
@@ -3,19 +3,67 @@ package com.craftinginterpreters.lox;
 class Token {
 
     final TokenType type;
-    final String lexeme;
     final Object literal;
     final int line;
+    // Tokens from the scanner point into its copy of the source and only
+    // make a String of their text the first time something asks for it.
+    private final char[] source;
+    private final int start;
+    private final int length;
+    private String lexeme;
+    // Identifiers are interned as they are scanned. Other tokens naming
+    // something, like those read back from a cache or scanned for the
+    // language server, intern their lexeme the first time they are looked
+    // up.
+    private Symbol symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line)  {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.source = null;
+        this.start = 0;
+        this.length = lexeme.length();
+    }
+
+    Token(TokenType type, char[] source, int start, int length, Object literal, int line)  {
+        this.type = type;
+        this.source = source;
+        this.start = start;
+        this.length = length;
+        this.literal = literal;
+        this.line = line;
+    }
+
+    Token(Symbol symbol, char[] source, int start, int line)   {
+        this(TokenType.IDENTIFIER, source, start, symbol.name.length(), null, line);
+        this.symbol = symbol;
+        this.lexeme = symbol.name;
+    }
+
+    Symbol symbol() {
+        if (symbol == null) symbol = Symbol.intern(lexeme());
+        return symbol;
+    }
+
+    String lexeme() {
+        if (lexeme == null) lexeme = new String(source, start, length);
+        return lexeme;
+    }
+
+    // Where the token starts in the source it was scanned from, or -1 for
+    // a token that wasn't scanned.
+    int offset()    {
+        return source == null ? -1 : start;
+    }
+
+    int length()    {
+        return length;
     }
 
     public String toString()    {
-        return type + " " + lexeme + " " + literal;
+        return type + " " + lexeme() + " " + literal;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,530 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Stack-based virtual machine for chunks produced by the Compiler. Globals
+// live in the interpreter's global environment so the natives it registers
+// are callable from bytecode, and any YazzCallable can be called directly.
+class VM {
+    private static final int FRAMES_MAX = 1 << 16;
+
+    private static class CallFrame  {
+        VmClosure closure;
+        int ip;
+        int base;
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private VmUpvalue openUpvalues;
+
+    VM(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    void interpret(List<Stmt> statements)   {
+        VmFunction script = Compiler.compile(statements);
+        if (Yazz.hadError)  return;
+
+        try {
+            VmClosure closure = new VmClosure(script);
+            push(closure);
+            call(closure, 0);
+            run();
+        } catch (RuntimeError error)    {
+            Yazz.runtimeError(error);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    // Calls a closure with no arguments from outside any script, which is
+    // how bench times a single function.
+    void call(VmClosure closure)    {
+        try {
+            push(closure);
+            call(closure, 0);
+            run();
+        } catch (RuntimeError error)    {
+            Yazz.runtimeError(error);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    private void run()  {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+        int base = frame.base;
+        Budget budget = interpreter.budget;
+
+        for (;;)    {
+            byte instruction = code[ip++];
+            switch  (instruction)   {
+                case OpCode.CONSTANT:
+                    push(constants[readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                case OpCode.NIL:    push(null); break;
+                case OpCode.TRUE:   push(true); break;
+                case OpCode.FALSE:  push(false); break;
+                case OpCode.POP:    sp--; break;
+                case OpCode.GET_LOCAL:
+                    push(stack[base + readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                case OpCode.SET_LOCAL:
+                    stack[base + readShort(code, ip)] = stack[sp - 1];
+                    ip += 2;
+                    break;
+                case OpCode.GET_GLOBAL:
+                    push(globals.get((Token)constants[readShort(code, ip)]));
+                    ip += 2;
+                    break;
+                case OpCode.DEFINE_GLOBAL:
+                    globals.define((Token)constants[readShort(code, ip)], stack[--sp]);
+                    ip += 2;
+                    break;
+                case OpCode.SET_GLOBAL:
+                    globals.assign((Token)constants[readShort(code, ip)], stack[sp - 1]);
+                    ip += 2;
+                    break;
+                case OpCode.GET_UPVALUE: {
+                    VmUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                    push(upvalue.isOpen ? stack[upvalue.slot] : upvalue.closed);
+                    ip += 2;
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    VmUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                    if (upvalue.isOpen) {
+                        stack[upvalue.slot] = stack[sp - 1];
+                    } else {
+                        upvalue.closed = stack[sp - 1];
+                    }
+                    ip += 2;
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    ip += 2;
+                    Object object = stack[sp - 1];
+                    if (!(object instanceof VmInstance))    {
+                        throw new RuntimeError(name, "Only instances have properties");
+                    }
+                    VmInstance instance = (VmInstance)object;
+                    Object value = instance.fields.get(name.lexeme());
+                    if (value != null || instance.fields.containsKey(name.lexeme()))  {
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    stack[sp - 1] = bindMethod(instance.klass, instance, name);
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    ip += 2;
+                    Object object = stack[sp - 2];
+                    if (!(object instanceof VmInstance))    {
+                        throw new RuntimeError(name, "Only instances have fields.");
+                    }
+                    Object value = stack[--sp];
+                    ((VmInstance)object).fields.put(name.lexeme(), value);
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    ip += 2;
+                    VmClass superclass = (VmClass)stack[--sp];
+                    stack[sp - 1] = bindMethod(superclass, stack[sp - 1], name);
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], b);
+                    break;
+                }
+                case OpCode.GREATER: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] > b;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] >= b;
+                    break;
+                }
+                case OpCode.LESS: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] < b;
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] <= b;
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object b = stack[sp - 1];
+                    Object a = stack[sp - 2];
+                    if (a instanceof Double && b instanceof Double) {
+                        stack[sp - 2] = (double)a + (double)b;
+                    } else if (a instanceof String && b instanceof String)  {
+                        stack[sp - 2] = (String)a + (String)b;
+                    } else {
+                        throw error(ip, "Operands must be two numbers or two strings.");
+                    }
+                    sp--;
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] - b;
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] * b;
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    checkNumberOperands(ip);
+                    double b = (double)stack[--sp];
+                    stack[sp - 1] = (double)stack[sp - 1] / b;
+                    break;
+                }
+                case OpCode.NOT:
+                    stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.NEGATE:
+                    if (!(stack[sp - 1] instanceof Double)) {
+                        throw error(ip, "Operand must be a number.");
+                    }
+                    stack[sp - 1] = -(double)stack[sp - 1];
+                    break;
+                case OpCode.PRINT:
+                    System.out.println(Interpreter.stringify(stack[--sp]));
+                    break;
+                case OpCode.JUMP:
+                    ip += readShort(code, ip) + 2;
+                    break;
+                case OpCode.JUMP_IF_FALSE:
+                    if (!Interpreter.isTruthy(stack[sp - 1]))   {
+                        ip += readShort(code, ip);
+                    }
+                    ip += 2;
+                    break;
+                case OpCode.JUMP_IF_TRUE:
+                    if (Interpreter.isTruthy(stack[sp - 1]))    {
+                        ip += readShort(code, ip);
+                    }
+                    ip += 2;
+                    break;
+                case OpCode.LOOP:
+                    if (budget != null && !budget.spend())  throw error(ip, budget.reason());
+                    ip -= readShort(code, ip) - 2;
+                    break;
+                case OpCode.CALL: {
+                    if (budget != null && !budget.spend())  throw error(ip, budget.reason());
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    callValue(stack[sp - 1 - argCount], argCount, ip);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.INVOKE: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    invoke(name, argCount, ip);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.SUPER_INVOKE: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    VmClass superclass = (VmClass)stack[--sp];
+                    invokeFromClass(superclass, name, argCount);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    VmFunction function = (VmFunction)constants[readShort(code, ip)];
+                    ip += 2;
+                    VmClosure closure = new VmClosure(function);
+                    push(closure);
+                    for (int i = 0; i < closure.upvalues.length; i++)   {
+                        boolean isLocal = code[ip] == 1;
+                        int index = readShort(code, ip + 1);
+                        ip += 3;
+                        if (isLocal)    {
+                            closure.upvalues[i] = captureUpvalue(base + index);
+                        } else {
+                            closure.upvalues[i] = frame.closure.upvalues[index];
+                        }
+                    }
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    sp--;
+                    break;
+                case OpCode.RETURN: {
+                    Object result = stack[--sp];
+                    closeUpvalues(base);
+                    frameCount--;
+                    if (frameCount == 0)    {
+                        sp = 0;
+                        return;
+                    }
+                    sp = base;
+                    push(result);
+
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.IMPORT: {
+                    YazzModule module = (YazzModule)constants[readShort(code, ip)];
+                    ip += 2;
+                    if (module.evaluated)   {
+                        push(null);
+                        break;
+                    }
+                    // The module's code runs as a script function called
+                    // from here, which returns nil when it is done.
+                    module.evaluated = true;
+                    VmClosure closure = new VmClosure(Compiler.compile(module.statements));
+                    push(closure);
+                    frame.ip = ip;
+                    call(closure, 0);
+                    frame = frames[frameCount - 1];
+                    code = frame.closure.function.chunk.code;
+                    constants = frame.closure.function.chunk.constants;
+                    ip = frame.ip;
+                    base = frame.base;
+                    break;
+                }
+                case OpCode.CLASS:
+                    push(new VmClass(((Token)constants[readShort(code, ip)]).lexeme()));
+                    ip += 2;
+                    break;
+                case OpCode.INHERIT: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    ip += 2;
+                    Object superclass = stack[sp - 2];
+                    if (!(superclass instanceof VmClass))   {
+                        throw new RuntimeError(name, "Superclass must be a class");
+                    }
+                    VmClass subclass = (VmClass)stack[sp - 1];
+                    subclass.methods.putAll(((VmClass)superclass).methods);
+                    subclass.initializer = ((VmClass)superclass).initializer;
+                    sp--;
+                    break;
+                }
+                case OpCode.METHOD: {
+                    Token name = (Token)constants[readShort(code, ip)];
+                    ip += 2;
+                    VmClosure method = (VmClosure)stack[sp - 1];
+                    VmClass klass = (VmClass)stack[sp - 2];
+                    klass.methods.put(name.lexeme(), method);
+                    if (name.lexeme().equals("init")) klass.initializer = method;
+                    sp--;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argCount, int ip)    {
+        if (callee instanceof VmClosure)    {
+            call((VmClosure)callee, argCount);
+            return;
+        }
+        if (callee instanceof VmBoundMethod)    {
+            VmBoundMethod bound = (VmBoundMethod)callee;
+            stack[sp - 1 - argCount] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+        if (callee instanceof VmClass)  {
+            VmClass klass = (VmClass)callee;
+            stack[sp - 1 - argCount] = new VmInstance(klass);
+            if (klass.initializer != null)  {
+                call(klass.initializer, argCount);
+            } else if (argCount != 0)   {
+                throw error(ip, "Expected 0 arguments but got " + argCount + ".");
+            }
+            return;
+        }
+        if (callee instanceof YazzCallable) {
+            callNative((YazzCallable)callee, argCount, ip);
+            return;
+        }
+        throw error(ip, "Can only call functions and classes");
+    }
+
+    private void invoke(Token name, int argCount, int ip) {
+        Object receiver = stack[sp - 1 - argCount];
+        if (!(receiver instanceof VmInstance))  {
+            throw new RuntimeError(name, "Only instances have properties");
+        }
+
+        VmInstance instance = (VmInstance)receiver;
+        Object value = instance.fields.get(name.lexeme());
+        if (value != null || instance.fields.containsKey(name.lexeme()))  {
+            stack[sp - 1 - argCount] = value;
+            callValue(value, argCount, ip);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private void invokeFromClass(VmClass klass, Token name, int argCount)   {
+        VmClosure method = klass.methods.get(name.lexeme());
+        if (method == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+        }
+        call(method, argCount);
+    }
+
+    private VmBoundMethod bindMethod(VmClass klass, Object receiver, Token name)    {
+        VmClosure method = klass.methods.get(name.lexeme());
+        if (method == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+        }
+        return new VmBoundMethod(receiver, method);
+    }
+
+    private void call(VmClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw error(frames[frameCount - 1].ip, "Expected " + closure.function.arity + " arguments but got " + argCount + ".");
+        }
+        if (frameCount == FRAMES_MAX)   {
+            throw error(frames[frameCount - 1].ip, "Stack overflow.");
+        }
+        if (frameCount == frames.length)    {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+
+        CallFrame frame = frames[frameCount];
+        if (frame == null)  {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.base = sp - argCount - 1;
+    }
+
+    private void callNative(YazzCallable callee, int argCount, int ip)  {
+        if (argCount != callee.arity()) {
+            throw error(ip, "Expected " + callee.arity() + " arguments but got " + argCount + ".");
+        }
+        Token paren = new Token(TokenType.RIGHT_PAREN, ")", null, lineAt(ip));
+        int first = sp - argCount;
+        Object result;
+        switch (argCount)   {
+            case 0: result = callee.call0(interpreter, paren); break;
+            case 1: result = callee.call1(interpreter, stack[first], paren); break;
+            case 2: result = callee.call2(interpreter, stack[first], stack[first + 1], paren); break;
+            case 3: result = callee.call3(interpreter, stack[first], stack[first + 1], stack[first + 2], paren); break;
+            case 4: result = callee.call4(interpreter, stack[first], stack[first + 1], stack[first + 2], stack[first + 3], paren); break;
+            default: result = callee.call(interpreter, Arrays.copyOfRange(stack, first, sp), paren);
+        }
+        sp -= argCount;
+        stack[sp - 1] = result;
+    }
+
+    private VmUpvalue captureUpvalue(int slot)  {
+        VmUpvalue previous = null;
+        VmUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot)  {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot)    return upvalue;
+
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if (previous == null)   {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int last)    {
+        while (openUpvalues != null && openUpvalues.slot >= last)   {
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.isOpen = false;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, sp * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    private static int readShort(byte[] code, int ip)   {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void checkNumberOperands(int ip)    {
+        if (stack[sp - 2] instanceof Double && stack[sp - 1] instanceof Double) return;
+        throw error(ip, "Operands must be numbers.");
+    }
+
+    private int lineAt(int ip)  {
+        return frames[frameCount - 1].closure.function.chunk.lines[ip - 1];
+    }
+
+    private RuntimeError error(int ip, String message)  {
+        return new RuntimeError(new Token(TokenType.EOF, "", null, lineAt(ip)), message);
+    }
+}
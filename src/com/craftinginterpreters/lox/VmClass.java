@@ -0,0 +1,19 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class VmClass {
+    final String name;
+    final Map<String, VmClosure> methods = new HashMap<>();
+    VmClosure initializer;
+
+    VmClass(String name)    {
+        this.name = name;
+    }
+
+    @Override
+    public String toString()    {
+        return name;
+    }
+}
@@ -0,0 +1,16 @@
+package com.craftinginterpreters.lox;
+
+// A captured variable. While the variable is still live on the VM stack the
+// upvalue points at its slot; once it goes out of scope the value is moved
+// into the upvalue itself.
+class VmUpvalue {
+    int slot;
+    Object closed;
+    boolean isOpen = true;
+    VmUpvalue next;
+
+    VmUpvalue(int slot, VmUpvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
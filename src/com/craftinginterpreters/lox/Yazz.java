@@ -2,31 +2,217 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Yazz   {
 
     private static final Interpreter interpreter = new Interpreter();
+    private static VM vm = null;
+    private static boolean dumpOptimized = false;
+    private static long fuel = 0;
+    private static long timeoutMillis = 0;
+    private static AstCache cache = null;
+    private static boolean stream = false;
+    private static boolean compact = false;
+    private static boolean profile = false;
+    private static Path profileStacks = null;
+    private static boolean allocationProfile = false;
+    // Where imports are found: the script's directory, or the working
+    // directory at the prompt.
+    private static Path directory = Paths.get("");
+    private static Path snapshot = null;
+    private static Path restore = null;
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    // The module a thread is compiling, so its errors say which file they
+    // are in. Not set while compiling the script itself.
+    static final ThreadLocal<String> module = new ThreadLocal<>();
+    // Set by the language server to collect the compile errors found on
+    // a thread instead of printing them.
+    static final ThreadLocal<List<Diagnostic>> diagnostics = new ThreadLocal<>();
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        String script = null;
+        Bench bench = null;
+        int first = 0;
+        if (args.length > 0 && args[0].equals("lsp"))   {
+            // Editors start servers with --stdio, which is the only transport.
+            if (args.length > 2 || (args.length == 2 && !args[1].equals("--stdio")))   usage();
+            System.exit(new LanguageServer(System.in, System.out).run());
+        }
+        if (args.length > 0 && args[0].equals("bench")) {
+            bench = new Bench(interpreter);
+            first = 1;
+        }
+
+        for (int i = first; i < args.length; i++)   {
+            String arg = args[i];
+            if (arg.equals("--vm")) {
+                // Run on the bytecode VM instead of the tree-walking interpreter
+                vm = new VM(interpreter);
+            } else if (arg.equals("--dump-optimized"))  {
+                // Print the tree the optimizer produces instead of running it
+                dumpOptimized = true;
+            } else if (arg.equals("--no-jit"))  {
+                // Keep hot functions in the tree-walking interpreter
+                JitCompiler.enabled = false;
+            } else if (arg.startsWith("--budget=")) {
+                // Stop scripts after this many loop iterations and calls
+                fuel = limit(arg);
+            } else if (arg.startsWith("--timeout=")) {
+                // Stop scripts that run longer than this many milliseconds
+                timeoutMillis = limit(arg);
+            } else if (arg.equals("--profile")) {
+                // Sample the running script and report where the time went
+                profile = true;
+            } else if (arg.startsWith("--profile="))    {
+                // Also write the samples to this file as collapsed stacks
+                profile = true;
+                profileStacks = path(arg);
+            } else if (arg.equals("--alloc-profile"))   {
+                // Count what the script allocates, by line and kind
+                allocationProfile = true;
+            } else if (arg.equals("--cache"))   {
+                // Keep compiled scripts in the default cache directory
+                cache = new AstCache(AstCache.defaultDirectory());
+            } else if (arg.startsWith("--cache="))  {
+                cache = new AstCache(Paths.get(arg.substring("--cache=".length())));
+            } else if (arg.equals("--stream"))  {
+                // Run each top-level statement as soon as it is parsed
+                stream = true;
+            } else if (arg.equals("--compact")) {
+                // Keep the compiled script in arrays and build nodes as they run
+                compact = true;
+            } else if (arg.startsWith("--snapshot=")) {
+                // Save the globals the script leaves behind to this file
+                snapshot = path(arg);
+            } else if (arg.startsWith("--restore="))  {
+                // Start from globals saved with --snapshot
+                restore = path(arg);
+            } else if (bench != null && bench.option(arg))  {
+                // --warmup, --iterations, --function and --json
+            } else if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                usage();
+            }
+        }
+
+        // The cache stores whole scripts, which streaming never has.
+        if (stream && cache != null)    usage();
+        // Each keeps less of the tree than a normal run, in its own way.
+        if (compact && (stream || cache != null))   usage();
+        // Snapshots hold the tree-walking interpreter's objects, which the
+        // VM can call but not look inside.
+        if (vm != null && (snapshot != null || restore != null))    usage();
+        // Only the tree-walking interpreter keeps the stack the profilers
+        // sample and counts what it allocates.
+        if (vm != null && (profile || allocationProfile))   usage();
+        if (profile)    profile(profileStacks);
+        if (allocationProfile)  trackAllocations();
+        if (restore != null)    restore();
+        interpreter.modules.cache = cache;
+        if (script != null) directory = Paths.get(script).toAbsolutePath().getParent();
+
+        if (bench != null)  {
+            if (script == null) usage();
+            System.exit(bench.run(script, vm));
+        }
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
+        if (snapshot != null)   snapshot();
+    }
+
+    static void usage() {
+        System.out.println("Usage: jlox [--vm] [--dump-optimized] [--no-jit] [--profile[=FILE]] [--alloc-profile] [--budget=N] [--timeout=MS] [--cache[=DIR]] [--stream] [--compact] [--snapshot=FILE] [--restore=FILE] [script]");
+        System.out.println("       jlox bench [--warmup=N] [--iterations=N] [--function=NAME] [--json=FILE] [options] script");
+        System.out.println("       jlox lsp [--stdio]");
+        System.exit(64);
+    }
+
+    private static long limit(String arg)   {
+        try {
+            long value = Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+            if (value > 0)  return value;
+        } catch (NumberFormatException e)   {
+        }
+        usage();
+        return 0;
+    }
+
+    private static Path path(String arg)    {
+        String value = arg.substring(arg.indexOf('=') + 1);
+        if (value.isEmpty())    usage();
+        return Paths.get(value);
+    }
+
+    private static void restore() throws IOException    {
+        try {
+            Snapshot.restore(interpreter, restore);
+        } catch (IllegalArgumentException e)    {
+            System.err.println("Can't restore " + restore + ": " + e.getMessage());
+            System.exit(65);
+        }
+    }
+
+    private static void snapshot() throws IOException   {
+        try {
+            Snapshot.save(interpreter, snapshot);
+        } catch (IllegalArgumentException e)    {
+            System.err.println(e.getMessage());
+            System.exit(70);
+        }
+    }
+
+    // The report is printed from a shutdown hook so that scripts which stop
+    // on an error are profiled too.
+    private static void profile(Path stacksFile)    {
+        Profiler profiler = profiler();
+        profiler.stacksFile = stacksFile;
+        profiler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            profiler.stop();
+            profiler.report(System.err);
+        }));
+    }
+
+    private static void trackAllocations()  {
+        Allocations.start(profiler());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Allocations.report(System.err)));
+    }
+
+    // Both profilers take lines from the same shadow stack.
+    private static Profiler profiler()  {
+        if (interpreter.profiler == null)   {
+            interpreter.profiler = new Profiler();
+            JitCompiler.profiling = true;
+        }
+        return interpreter.profiler;
     }
 
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        if (cache != null)  {
+            run(cache.load(Files.readAllBytes(Paths.get(path))));
+        } else if (stream)  {
+            stream(new Scanner(read(path)));
+        } else if (compact) {
+            compact(new Scanner(read(path)));
+        } else  {
+            run(parse(new Scanner(read(path))));
+        }
 
         // Indicate an error in the exit code
         if  (hadError)  {
@@ -35,6 +221,117 @@ public class Yazz   {
         if (hadRuntimeError)    System.exit(70);
     }
 
+    // The file is mapped rather than read into the heap, so the decoded
+    // characters the scanner works on are the only copy of it Yazz makes.
+    private static CharBuffer read(String path) throws IOException  {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))    {
+            return Charset.defaultCharset().decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // --stream: each top-level statement is resolved, optimized and run as
+    // soon as it has been parsed, so output starts before the rest of the
+    // file is even scanned and only the parts of the tree that are still
+    // in use stay in memory. Unlike a normal run, the statements before a
+    // syntax error have already run when it is found. After any compile
+    // error nothing more runs, but parsing carries on to report the rest.
+    // A syntax error stops the statements after it being resolved, as in a
+    // normal run. After a resolve error or a module that won't load, they
+    // are still resolved and their imports loaded. hadError is cleared
+    // once one of those has been counted, so that here it only ever
+    // stands for a syntax error.
+    private static void stream(Scanner scanner) {
+        Parser parser = new Parser(scanner);
+        Resolver resolver = new Resolver();
+        Optimizer optimizer = new Optimizer();
+        boolean syntaxError = false;
+        boolean failed = false;
+        startBudget();
+        while (!parser.isAtEnd() && !hadRuntimeError)   {
+            Stmt statement = parser.next();
+            if (hadError)   syntaxError = true;
+            if (syntaxError)    continue;
+
+            List<Stmt> statements = Collections.singletonList(statement);
+            resolver.resolve(statements);
+            if (!hadError)  {
+                statements = optimizer.optimize(statements);
+                if (dumpOptimized)  {
+                    if (!failed)    dump(statements);
+                } else if (failed)  {
+                    // Only for the errors in what it imports.
+                    interpreter.modules.load(statements, directory);
+                } else  {
+                    interpret(statements);
+                }
+            }
+            if (hadError)   {
+                failed = true;
+                hadError = false;
+            }
+        }
+        if (failed) hadError = true;
+    }
+
+    // --compact: each top-level statement is resolved and optimized as it
+    // is parsed, then kept in a CompactAst rather than as nodes. Once the
+    // whole script has compiled, the statements are built again one at a
+    // time to run, and a function's body only when it is first called, so
+    // only what has been run, and is still reachable, is ever held as
+    // objects.
+    private static void compact(Scanner scanner)    {
+        Parser parser = new Parser(scanner);
+        Resolver resolver = new Resolver();
+        Optimizer optimizer = new Optimizer();
+        CompactAst tree = new CompactAst();
+        List<Stmt> imports = new ArrayList<>();
+        // Errors are reported as for a whole script: after a syntax error
+        // nothing more is resolved, and after a resolve error the rest is
+        // still resolved but not kept. Only resolve errors in statements
+        // before the first syntax error are reported on top. hadError is
+        // cleared once a resolve error has been counted, so that here it
+        // only ever stands for a syntax error.
+        boolean syntaxError = false;
+        boolean resolveError = false;
+        while (!parser.isAtEnd())   {
+            Stmt statement = parser.next();
+            if (hadError)   syntaxError = true;
+            if (syntaxError)    continue;
+
+            List<Stmt> statements = Collections.singletonList(statement);
+            resolver.resolve(statements);
+            if (hadError)   {
+                resolveError = true;
+                hadError = false;
+            }
+            if (resolveError)   continue;
+
+            if (statement instanceof Stmt.Import)   imports.add(statement);
+            for (Stmt optimized : optimizer.optimize(statements))   {
+                tree.add(optimized);
+            }
+        }
+        if (syntaxError || resolveError)    {
+            hadError = true;
+            return;
+        }
+        tree.trim();
+        // Modules are compiled before anything runs, as they are for a
+        // whole script. Each import is built again to run, and finds its
+        // module already loaded.
+        if (!dumpOptimized && !interpreter.modules.load(imports, directory))  return;
+
+        startBudget();
+        for (int i = 0; i < tree.size() && !hadRuntimeError; i++)  {
+            List<Stmt> statements = Collections.singletonList(tree.statement(i));
+            if (dumpOptimized)  {
+                dump(statements);
+            } else  {
+                interpret(statements);
+            }
+        }
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -42,45 +339,103 @@ public class Yazz   {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+            run(parse(line));
             hadError = false;
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
+    private static void run(List<Stmt> statements)  {
+        if (statements == null) return;
+
+        if (dumpOptimized)  {
+            dump(statements);
+            return;
+        }
+
+        execute(statements);
+    }
+
+    private static void dump(List<Stmt> statements) {
+        AstPrinter printer = new AstPrinter();
+        for (Stmt statement : statements)   {
+            System.out.println(printer.print(statement));
+        }
+    }
+
+    // Everything up to running the code. Returns null if there was a
+    // compile error, which has already been reported.
+    static List<Stmt> parse(String source)  {
+        return parse(new Scanner(source));
+    }
+
+    private static List<Stmt> parse(Scanner scanner)    {
         List<Token> tokens = scanner.scanTokens();  // Use the correct class
         Parser parser = new Parser(tokens);
         List<Stmt> statements = parser.parse();
 
         // Stop if there was a syntax error
-        if (hadError)   return;
+        if (hadError)   return null;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
-        if (hadError)   return;
-        interpreter.interpret(statements);
+        if (hadError)   return null;
+
+        return new Optimizer().optimize(statements);
+    }
+
+    static void execute(List<Stmt> statements)  {
+        startBudget();
+        interpret(statements);
+    }
+
+    // Each script, or each line at the prompt, gets a budget of its own.
+    private static void startBudget()   {
+        if (fuel > 0 || timeoutMillis > 0)  interpreter.budget = new Budget(fuel, timeoutMillis);
+    }
+
+    private static void interpret(List<Stmt> statements)    {
+        if (!interpreter.modules.load(statements, directory))   return;
+
+        if (vm != null) {
+            vm.interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
     }
 
     static void error(int line, String message) {
+        List<Diagnostic> collected = diagnostics.get();
+        if (collected != null)  {
+            collected.add(new Diagnostic(line, -1, 0, message));
+            return;
+        }
         report(line, "", message);
     }
 
     static void runtimeError(RuntimeError error)    {
         System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
         hadRuntimeError = true;
+
+        if (YazzEvents.recording()) YazzEvents.RuntimeError.report(error.getMessage(), error.token.line);
     }
 
     private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
+        String file = module.get();
+        String location = file == null ? "line " + line : file + " line " + line;
+        System.err.println("[" + location + "] Error" + where + ": " + message);
         hadError = true;
     }
 
     static void error(Token token, String message)  {
+        List<Diagnostic> collected = diagnostics.get();
+        if (collected != null)  {
+            collected.add(new Diagnostic(token.line, token.offset(), token.length(), message));
+            return;
+        }
         if  (token.type == TokenType.EOF)   {
             report(token.line, " at end", message);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            report(token.line, " at '" + token.lexeme() + "'", message);
         }
     }
 
@@ -1,8 +1,38 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
+// Calls with up to four arguments go through the fixed-arity entry points so
+// the caller never has to collect the arguments into an array or list.
+// Every implementation takes the array form, which is used for more than
+// four. The entry points fall back to it by default, so an implementation
+// overrides those for the arities it can take without the array.
 interface YazzCallable {
+    Object[] NO_ARGUMENTS = new Object[0];
+
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments, Token token);
+
+    Object call(Interpreter interpreter, Object[] arguments, Token token);
+
+    default Object call0(Interpreter interpreter, Token token) {
+        return call(interpreter, NO_ARGUMENTS, token);
+    }
+
+    default Object call1(Interpreter interpreter, Object a, Token token) {
+        if (Allocations.tracking)   Allocations.arguments(1);
+        return call(interpreter, new Object[] {a}, token);
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b, Token token) {
+        if (Allocations.tracking)   Allocations.arguments(2);
+        return call(interpreter, new Object[] {a, b}, token);
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c, Token token) {
+        if (Allocations.tracking)   Allocations.arguments(3);
+        return call(interpreter, new Object[] {a, b, c}, token);
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d, Token token) {
+        if (Allocations.tracking)   Allocations.arguments(4);
+        return call(interpreter, new Object[] {a, b, c, d}, token);
+    }
 }
@@ -1,28 +1,37 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 class YazzClass implements YazzCallable{
     final String name;
     final YazzClass superclass;
+    // Inherited methods are copied in when the class is created, so a
+    // lookup never has to walk the superclass chain.
     private final Map<String, YazzFunction> methods;
+    private final YazzFunction initializer;
+    // Every instance starts out with this shape and no fields.
+    final Shape rootShape = new Shape();
+    int fieldCapacity = 0;
 
     YazzClass(String name, YazzClass superclass, Map<String, YazzFunction> methods)  {
         this.superclass = superclass;
         this.name = name;
-        this.methods = methods;
+        this.methods = new HashMap<>();
+        if (superclass != null) {
+            this.methods.putAll(superclass.methods);
+        }
+        this.methods.putAll(methods);
+        this.initializer = this.methods.get("init");
     }
 
     YazzFunction findMethod(String name)    {
-        if (methods.containsKey(name))  {
-            return methods.get(name);
-        }
+        return methods.get(name);
+    }
 
-        if (superclass != null) {
-            return superclass.findMethod(name);
-        }
-        return null;
+    // Inherited ones included.
+    Map<String, YazzFunction> methods() {
+        return methods;
     }
 
     @Override
@@ -30,19 +39,88 @@ class YazzClass implements YazzCallable{
         return name;
     }
 
+    // A class with no initializer takes no arguments, so only call0 and
+    // the array form have to do without one. The others put the
+    // arguments straight into the initializer's frame.
+    @Override
+    public Object call0(Interpreter interpreter, Token token) {
+        YazzEvents.Instantiate event = begin();
+        YazzInstance instance = new YazzInstance(this);
+        if (initializer != null)    initializer.execute(interpreter, initializer.newFrame(instance));
+        return end(event, instance);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a, Token token) {
+        YazzEvents.Instantiate event = begin();
+        YazzInstance instance = new YazzInstance(this);
+        Environment frame = initializer.newFrame(instance);
+        frame.define(a);
+        initializer.execute(interpreter, frame);
+        return end(event, instance);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b, Token token) {
+        YazzEvents.Instantiate event = begin();
+        YazzInstance instance = new YazzInstance(this);
+        Environment frame = initializer.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        initializer.execute(interpreter, frame);
+        return end(event, instance);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c, Token token) {
+        YazzEvents.Instantiate event = begin();
+        YazzInstance instance = new YazzInstance(this);
+        Environment frame = initializer.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        initializer.execute(interpreter, frame);
+        return end(event, instance);
+    }
+
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d, Token token) {
+        YazzEvents.Instantiate event = begin();
+        YazzInstance instance = new YazzInstance(this);
+        Environment frame = initializer.newFrame(instance);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        frame.define(d);
+        initializer.execute(interpreter, frame);
+        return end(event, instance);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments, Token token) {
+        YazzEvents.Instantiate event = begin();
         YazzInstance instance = new YazzInstance(this);
-        YazzFunction initializer = findMethod("init");
         if (initializer != null)    {
-            initializer.bind(instance).call(interpreter, arguments, token);
+            Environment frame = initializer.newFrame(instance);
+            for (Object argument : arguments)   {
+                frame.define(argument);
+            }
+            initializer.execute(interpreter, frame);
         }
+        return end(event, instance);
+    }
+
+    private static YazzEvents.Instantiate begin()   {
+        return YazzEvents.recording() ? YazzEvents.Instantiate.start() : null;
+    }
+
+    private YazzInstance end(YazzEvents.Instantiate event, YazzInstance instance)   {
+        if (event != null)  event.end(this);
         return instance;
     }
 
     @Override
     public int arity()  {
-        YazzFunction initializer = findMethod("init");
         if (initializer == null)    return 0;
         return initializer.arity();
     }
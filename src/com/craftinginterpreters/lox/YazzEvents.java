@@ -0,0 +1,141 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events for Yazz-level activity. They stay compiled in,
+// but every site checks recording() first: loading the first event class
+// starts up Flight Recorder itself, which would add a few hundred
+// milliseconds to every run. The Java stack traces would only show the
+// interpreter, so they are off; the Yazz function and line are fields
+// instead. Calls and natives only record the slow ones unless the
+// recording lowers the threshold.
+final class YazzEvents {
+    private YazzEvents() {}
+
+    // True once a recording has been started, from the command line or
+    // later through jcmd.
+    static boolean recording()  {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("yazz.Call")
+    @Label("Yazz Call")
+    @Category("Yazz")
+    @Description("A Yazz function or method call, including its callees")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class Call extends Event {
+        @Label("Function")
+        String function;
+        @Label("Line")
+        int line;
+
+        static Call start() {
+            Call event = new Call();
+            event.begin();
+            return event;
+        }
+
+        void end(Stmt.Function declaration) {
+            end();
+            if (shouldCommit()) {
+                function = declaration.name.lexeme();
+                line = declaration.name.line;
+                commit();
+            }
+        }
+    }
+
+    @Name("yazz.Instantiate")
+    @Label("Yazz Instantiation")
+    @Category("Yazz")
+    @Description("A Yazz class called to create an instance, including its initializer")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class Instantiate extends Event {
+        @Label("Class")
+        String className;
+
+        static Instantiate start()  {
+            Instantiate event = new Instantiate();
+            event.begin();
+            return event;
+        }
+
+        void end(YazzClass klass)   {
+            end();
+            if (shouldCommit()) {
+                className = klass.name;
+                commit();
+            }
+        }
+    }
+
+    // Every block and call allocates one, so this is off unless asked for.
+    @Name("yazz.Environment")
+    @Label("Yazz Environment")
+    @Category("Yazz")
+    @Description("An environment allocated for a block or call")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Environment extends Event {
+        static void allocated() {
+            Environment event = new Environment();
+            if (event.shouldCommit())   event.commit();
+        }
+    }
+
+    @Name("yazz.NativeCall")
+    @Label("Yazz Native Call")
+    @Category("Yazz")
+    @Description("A call to a built-in function")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class NativeCall extends Event {
+        @Label("Function")
+        String function;
+
+        static NativeCall start()   {
+            NativeCall event = new NativeCall();
+            event.begin();
+            return event;
+        }
+
+        void end(String name)   {
+            end();
+            if (shouldCommit()) {
+                function = name;
+                commit();
+            }
+        }
+    }
+
+    @Name("yazz.RuntimeError")
+    @Label("Yazz Runtime Error")
+    @Category("Yazz")
+    @Description("A runtime error that stopped the script")
+    @StackTrace(false)
+    static final class RuntimeError extends Event {
+        @Label("Message")
+        String message;
+        @Label("Line")
+        int line;
+
+        static void report(String message, int line)    {
+            RuntimeError event = new RuntimeError();
+            if (event.shouldCommit())   {
+                event.message = message;
+                event.line = line;
+                event.commit();
+            }
+        }
+    }
+}
@@ -1,27 +1,31 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 class YazzFunction implements YazzCallable {
     private final Stmt.Function declaration;
     private final Environment closure;
     private final boolean isInitializer;
+    // Set for methods that were read off an instance as a value.
+    private final YazzInstance receiver;
 
     YazzFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+        this(declaration, closure, isInitializer, null);
+    }
+
+    private YazzFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, YazzInstance receiver) {
         this.isInitializer = isInitializer;
         this.closure = closure;
         this.declaration = declaration;
+        this.receiver = receiver;
     }
 
     YazzFunction bind(YazzInstance instance)    {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new YazzFunction(declaration, environment, isInitializer);
+        if (Allocations.tracking)   Allocations.boundMethod();
+        return new YazzFunction(declaration, closure, isInitializer, instance);
     }
 
     @Override
     public String toString()    {
-        return "<fn " + declaration.name.lexeme + ">";
+        return "<fn " + declaration.name.lexeme() + ">";
     }
 
     @Override
@@ -29,20 +33,105 @@ class YazzFunction implements YazzCallable {
         return declaration.params.size();
     }
 
+    @Override
+    public Object call0(Interpreter interpreter, Token token) {
+        Environment frame = newFrame(receiver);
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a, Token token) {
+        Environment frame = newFrame(receiver);
+        frame.define(a);
+        return result(interpreter.executeBody(this, frame), frame);
+    }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments, Token token) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue)    {
-            if (isInitializer)  return closure.getAt(0, "this");
-            return returnValue.value;
+    public Object call2(Interpreter interpreter, Object a, Object b, Token token) {
+        Environment frame = newFrame(receiver);
+        frame.define(a);
+        frame.define(b);
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c, Token token) {
+        Environment frame = newFrame(receiver);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d, Token token) {
+        Environment frame = newFrame(receiver);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        frame.define(d);
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments, Token token) {
+        Environment frame = newFrame(receiver);
+        for (Object argument : arguments)   {
+            frame.define(argument);
         }
-        if (isInitializer)  return closure.getAt(0, "this");
-        return null;
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    // Methods keep "this" in the first slot of their own frame, so calling
+    // one on an instance doesn't need a bound copy of the function. The
+    // caller defines the parameters in order after it.
+    Environment newFrame(YazzInstance receiver) {
+        Environment frame = new Environment(closure);
+        if (receiver != null)   frame.define(receiver);
+        return frame;
+    }
+
+    // Frame for calling the function as a value, with the instance a bound
+    // method was read off as "this".
+    Environment newFrame()  {
+        return newFrame(receiver);
+    }
+
+    // Tail calls run the callee's body in place of the caller's, so they
+    // only work for functions whose result is what the body returns.
+    boolean canTailCall()   {
+        return !isInitializer;
+    }
+
+    // Only true for a method looked up on its class, which is never a
+    // value in Yazz code: reading a method off an instance binds it.
+    boolean needsReceiver() {
+        return declaration.method && receiver == null;
+    }
+
+    Stmt.Function declaration() {
+        return declaration;
+    }
+
+    Environment closure()   {
+        return closure;
+    }
+
+    boolean isInitializer() {
+        return isInitializer;
+    }
+
+    YazzInstance receiver() {
+        return receiver;
+    }
+
+    Object execute(Interpreter interpreter, Environment frame) {
+        return result(interpreter.executeBody(this, frame), frame);
+    }
+
+    // The entry points above run the body themselves rather than going
+    // through execute(), which keeps one Java frame less per Yazz call.
+    private Object result(Object value, Environment frame)  {
+        return isInitializer ? frame.getAt(0, 0) : value;
     }
 }
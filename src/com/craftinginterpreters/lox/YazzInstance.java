@@ -1,30 +1,49 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 
 class YazzInstance {
-    private YazzClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final YazzClass klass;
+    Shape shape;
+    private Object[] values;
 
     YazzInstance(YazzClass klass)   {
         this.klass = klass;
+        this.shape = klass.rootShape;
+        this.values = new Object[klass.fieldCapacity];
+        if (Allocations.tracking)   Allocations.instance(klass.fieldCapacity);
     }
 
-    Object get(Token name)  {
-        if (fields.containsKey(name.lexeme))    {
-            return fields.get(name.lexeme);
-        }
+    Object get(Token name, InlineCache cache)  {
+        int index = cache.load(shape, name.lexeme());
+        if (index >= 0) return values[index];
 
-        YazzFunction method = klass.findMethod(name.lexeme);
+        YazzFunction method = klass.findMethod(name.lexeme());
         if (method != null) return method.bind(this);
 
-        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
+    }
+
+    Object field(int index) {
+        return values[index];
     }
 
-    void set(Token name, Object value)  {
-        fields.put(name.lexeme, value);
+    void set(Token name, Object value, InlineCache cache)  {
+        cache.store(this, name.lexeme(), value);
+    }
+
+    void put(Shape target, int index, Object value) {
+        if (target != shape)    {
+            if (index >= values.length) {
+                values = Arrays.copyOf(values, target.size);
+                if (Allocations.tracking)   Allocations.fields(target.size);
+                // Later instances of the class start out big enough.
+                if (target.size > klass.fieldCapacity)  klass.fieldCapacity = target.size;
+            }
+            shape = target;
+        }
+        values[index] = value;
     }
 
     @Override
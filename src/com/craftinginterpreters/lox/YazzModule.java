@@ -0,0 +1,21 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// A file loaded by import. It runs in the global scope the first time a
+// script imports it and never again, so whatever it defines is shared by
+// everything that imports it.
+class YazzModule {
+    final Path path;
+    // Of the contents it was compiled from, as AstCache names entries.
+    final String hash;
+    final List<Stmt> statements;
+    boolean evaluated = false;
+
+    YazzModule(Path path, String hash, List<Stmt> statements)   {
+        this.path = path;
+        this.hash = hash;
+        this.statements = statements;
+    }
+}
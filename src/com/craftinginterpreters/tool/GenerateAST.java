@@ -2,6 +2,7 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -12,32 +13,38 @@ public class GenerateAST {
             System.exit(64);
         }
         String outputDir = args[0];
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign     : Token name, Expr value",
-                "Binary     : Expr left, Token operator, Expr right",
-                "Call       : Expr callee, Token paren, List<Expr> arguments",
-                "Get        : Expr object, Token name",
+        List<String> exprTypes = Arrays.asList(
+                "Assign     : Token name, Expr value : int depth = -1, int slot",
+                "Binary     : Expr left, Token operator, Expr right : BinaryOp op = BinaryOp.UNINITIALIZED",
+                "Call       : Expr callee, Token paren, List<Expr> arguments : boolean tailCall",
+                "Get        : Expr object, Token name : final InlineCache cache = new InlineCache()",
                 "Grouping   : Expr expression",
                 "Literal    : Object value",
                 "Logical    : Expr left, Token operator, Expr right",
-                "Set        : Expr object, Token name, Expr value",
-                "Super      : Token keyword, Token method",
-                "This       : Token keyword",
+                "Set        : Expr object, Token name, Expr value : final InlineCache cache = new InlineCache()",
+                "Super      : Token keyword, Token method : int depth = -1, int slot",
+                "This       : Token keyword : int depth = -1, int slot",
                 "Unary      : Token operator, Expr right",
-                "Variable   : Token name"
-        ));
+                "Variable   : Token name : int depth = -1, int slot"
+        );
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        List<String> stmtTypes = Arrays.asList(
                 "Block      : List<Stmt> statements",
                 "Class      : Token name, Expr.Variable superclass," + " List<Stmt.Function> methods",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params," + " List<Stmt> body",
+                "Function   : Token name, List<Token> params," + " List<Stmt> body" +
+                        " : boolean method, int calls, int backEdges, JitCode code, boolean uncompilable",
                 "If         : Expr condition, Stmt thenBranch," + " Stmt elseBranch",
+                "Import     : Token keyword, Token path : YazzModule module",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
                 "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
-                ));
+                "While      : Token keyword, Expr condition, Stmt body"
+                );
+
+        defineAst(outputDir, "Expr", exprTypes);
+        defineAst(outputDir, "Stmt", stmtTypes);
+        defineCompact(outputDir, exprTypes, stmtTypes);
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -54,9 +61,11 @@ public class GenerateAST {
 
         // The AST classes
         for (String type: types)    {
-            String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] parts = type.split(":");
+            String className = parts[0].trim();
+            String fields = parts[1].trim();
+            String mutableFields = parts.length > 2 ? parts[2].trim() : null;
+            defineType(writer, baseName, className, fields, mutableFields);
         }
         // The base accept() method
         writer.println();
@@ -75,7 +84,9 @@ public class GenerateAST {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    // Fields after a second ':' are not constructor parameters. Later passes
+    // fill them in, e.g. the Resolver records scope distances there.
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList, String mutableFieldList) {
         writer.println("    static class " + className + " extends " + baseName + " {");
 
         // Constructor
@@ -101,6 +112,181 @@ public class GenerateAST {
         for (String field : fields) {
             writer.println("    final " + field + ";");
         }
+        if (mutableFieldList != null)   {
+            for (String field : mutableFieldList.split(", "))   {
+                writer.println("    " + field + ";");
+            }
+        }
+        writer.println("    }");
+    }
+
+    // The mutable fields the Resolver fills in, which a compact tree keeps.
+    // The rest are for the interpreter and JIT, which start them afresh.
+    private static final List<String> RESOLVED = Arrays.asList("depth", "slot", "tailCall", "method");
+
+    // CompactAst: the tree kept in CompactStore's arrays. For each kind of
+    // node, a constant, an accessor for each field, a visit method that
+    // encodes it and a case that builds it again.
+    private static void defineCompact(String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+        String path = outputDir + "/CompactAst.java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package com.craftinginterpreters.lox;");
+        writer.println();
+        writer.println("// Generated by GenerateAST. The storage is CompactStore's.");
+        writer.println("class CompactAst extends CompactStore implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+
+        List<String> types = new ArrayList<>(exprTypes);
+        types.addAll(stmtTypes);
+        for (int i = 0; i < types.size(); i++)  {
+            writer.println("    static final byte " + className(types.get(i)).toUpperCase() + " = " + i + ";");
+        }
+
+        // Accessors, which take a node and return a field: another node, a
+        // token or a list as an int, or a literal's value.
+        for (String type : types)   {
+            String className = className(type);
+            List<String> fields = compactFields(type);
+            writer.println();
+            for (int i = 0; i < fields.size(); i++) {
+                String fieldType = fields.get(i).split(" ")[0];
+                String name = fields.get(i).split(" ")[1];
+                String accessor = accessor(className, name);
+                if (fieldType.equals("Object")) {
+                    writer.println("    Object " + accessor + "(int node) { return constant(field(node, " + i + ")); }");
+                } else if (fieldType.equals("boolean")) {
+                    writer.println("    boolean " + accessor + "(int node) { return field(node, " + i + ") != 0; }");
+                } else  {
+                    writer.println("    int " + accessor + "(int node) { return field(node, " + i + "); }");
+                }
+            }
+        }
+
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    int encode(Expr expr) {");
+        writer.println("    return expr == null ? -1 : expr.accept(this);");
+        writer.println("    }");
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    int encode(Stmt stmt) {");
+        writer.println("    return stmt == null ? -1 : stmt.accept(this);");
         writer.println("    }");
+
+        defineEncoders(writer, "Expr", exprTypes);
+        defineEncoders(writer, "Stmt", stmtTypes);
+        defineDecoder(writer, "Expr", exprTypes);
+        defineDecoder(writer, "Stmt", stmtTypes);
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static void defineEncoders(PrintWriter writer, String baseName, List<String> types)   {
+        String variable = baseName.toLowerCase();
+        for (String type : types)   {
+            String className = className(type);
+            List<String> fields = compactFields(type);
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public Integer visit" + className + baseName + "(" + baseName + "." + className + " " + variable + ") {");
+            writer.println("    int node = node(" + className.toUpperCase() + ", " + fields.size() + ");");
+            for (int i = 0; i < fields.size(); i++) {
+                String fieldType = fields.get(i).split(" ")[0];
+                String value = variable + "." + fields.get(i).split(" ")[1];
+                if (fieldType.startsWith("List<"))  {
+                    String element = fieldType.substring("List<".length(), fieldType.length() - 1);
+                    writer.println("    int list" + i + " = list(" + value + ".size());");
+                    writer.println("    for (int i = 0; i < " + value + ".size(); i++) {");
+                    writer.println("    element(list" + i + ", i, " + encoder(element, value + ".get(i)") + ");");
+                    writer.println("    }");
+                    writer.println("    set(node, " + i + ", list" + i + ");");
+                } else  {
+                    writer.println("    set(node, " + i + ", " + encoder(fieldType, value) + ");");
+                }
+            }
+            writer.println("    return node;");
+            writer.println("    }");
+        }
+    }
+
+    private static String encoder(String fieldType, String value)   {
+        switch (fieldType)  {
+            case "Token": return "token(" + value + ")";
+            case "Object": return "constant(" + value + ")";
+            case "boolean": return value + " ? 1 : 0";
+            case "int": return value;
+            default: return "encode(" + value + ")";
+        }
+    }
+
+    private static void defineDecoder(PrintWriter writer, String baseName, List<String> types)  {
+        String variable = baseName.toLowerCase();
+        writer.println();
+        writer.println("    @Override");
+        writer.println("    " + baseName + " " + variable + "(int node) {");
+        writer.println("    if (node < 0) return null;");
+        writer.println("    switch (kind(node)) {");
+        for (String type : types)   {
+            String className = className(type);
+            String[] fields = type.split(":")[1].trim().split(", ");
+            List<String> arguments = new ArrayList<>();
+            for (String field : fields) {
+                String fieldType = field.split(" ")[0];
+                arguments.add(decoder(fieldType, accessor(className, field.split(" ")[1]) + "(node)"));
+            }
+            writer.println("    case " + className.toUpperCase() + ": {");
+            writer.println("    " + baseName + "." + className + " " + variable + " = new " + baseName + "." + className
+                    + "(" + String.join(", ", arguments) + ");");
+            List<String> compact = compactFields(type);
+            for (int i = fields.length; i < compact.size(); i++)    {
+                String name = compact.get(i).split(" ")[1];
+                writer.println("    " + variable + "." + name + " = " + accessor(className, name) + "(node);");
+            }
+            writer.println("    return " + variable + ";");
+            writer.println("    }");
+        }
+        writer.println("    }");
+        writer.println("    throw new IllegalStateException(\"Not " + (baseName.equals("Expr") ? "an expression" : "a statement") + " node.\");");
+        writer.println("    }");
+    }
+
+    private static String decoder(String fieldType, String value)   {
+        switch (fieldType)  {
+            case "Token": return "token(" + value + ")";
+            case "Object": return value;
+            case "Expr": return "expr(" + value + ")";
+            case "Stmt": return "stmt(" + value + ")";
+            case "List<Expr>": return "exprList(" + value + ")";
+            case "List<Stmt>": return "stmtList(" + value + ")";
+            case "List<Token>": return "tokenList(" + value + ")";
+            case "List<Stmt.Function>": return "functionList(" + value + ")";
+        }
+        // A particular kind of node, like Expr.Variable.
+        return "(" + fieldType + ")" + fieldType.split("\\.")[0].toLowerCase() + "(" + value + ")";
+    }
+
+    // The constructor's fields, then those the Resolver fills in, without
+    // their initial values.
+    private static List<String> compactFields(String type)  {
+        String[] parts = type.split(":");
+        List<String> fields = new ArrayList<>(Arrays.asList(parts[1].trim().split(", ")));
+        if (parts.length > 2)   {
+            for (String field : parts[2].trim().split(", "))    {
+                String[] words = field.split(" ");
+                if (RESOLVED.contains(words[1]))    fields.add(words[0] + " " + words[1]);
+            }
+        }
+        return fields;
+    }
+
+    private static String className(String type)    {
+        return type.split(":")[0].trim();
+    }
+
+    // assignName(), ifThenBranch() and so on.
+    private static String accessor(String className, String field)  {
+        return Character.toLowerCase(className.charAt(0)) + className.substring(1)
+                + Character.toUpperCase(field.charAt(0)) + field.substring(1);
     }
-}
\ No newline at end of file
+}